@@ -4,53 +4,55 @@ import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Message;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.RecyclerView;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
-import android.widget.ListView;
+import android.widget.ListPopupWindow;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.google.gson.JsonParseException;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.Reader;
 import java.lang.ref.WeakReference;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
-import okhttp3.HttpUrl;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
+import okhttp3.Call;
 import okhttp3.Response;
 
-public class FavouritesActivity extends AppCompatActivity {
+import pl.edu.agh.movierecommender.core.TitleIndex;
+
+public class FavouritesActivity extends AppCompatActivity implements FavouritesOutbox.Listener {
 
-    private static final String SERVER_ENDPOINT = MainActivity.SERVER_ADDRESS + "/favourites";
-    private static final String KEY_FAVOURITES_JSON = "KEY_FAVOURITES_JSON";
-    private static final String KEY_ADDED_FAVOURITES_JSON = "KEY_ADDED_FAVOURITES_JSON";
+    private static final int FAVOURITES_STORED = 1;
+    private static final int FAVOURITES_FETCHED = 2;
     private static final String KEY_ADDED_FAVOURITES_ERROR = "KEY_ADDED_FAVOURITES_ERROR";
-    private static final MediaType JSON_TYPE = MediaType.parse("application/json; charset=utf-8");
+    private static final int MAX_SUGGESTIONS = 8;
 
     private EditText inputFavourite;
     private Button buttonAddFavourite;
-    private ListView favouritesListView;
+    private RecyclerView favouritesListView;
     private String username;
 
     private Handler favouritesHandler;
     private Handler addFavouritesHandler;
+    private FavouritesOutbox favouritesOutbox;
+    private LocalFavouritesStore localFavourites;
+
+    private TitleIndexLoader titleIndexLoader;
+    private ListPopupWindow suggestionsPopup;
+    private ArrayAdapter<String> suggestionsAdapter;
+    private boolean choosingSuggestion;
 
-    private MovieListAdapter favouritesAdapter;
-    private List<MovieCard> favouritesCards = new ArrayList<>();
+    private FavouritesAdapter favouritesAdapter;
+    private FavouritesModel favourites;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -71,6 +73,41 @@ public class FavouritesActivity extends AppCompatActivity {
 
         favouritesHandler = new FavouritesHandler(this);
         addFavouritesHandler = new AddFavouritesHandler(this);
+        localFavourites = LocalFavouritesStore.getInstance(getApplicationContext());
+        favouritesOutbox = FavouritesOutbox.getInstance(getApplicationContext());
+        favouritesOutbox.addListener(this);
+
+        // Suggestions are looked up on every keystroke on the UI thread, the index answers in
+        // well under a millisecond.
+        titleIndexLoader = TitleIndexLoader.getInstance(getApplicationContext());
+        titleIndexLoader.load();
+        suggestionsAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, new ArrayList<>());
+        suggestionsPopup = new ListPopupWindow(this);
+        suggestionsPopup.setAnchorView(inputFavourite);
+        suggestionsPopup.setAdapter(suggestionsAdapter);
+        suggestionsPopup.setOnItemClickListener((parent, view, position, id) -> {
+            choosingSuggestion = true;
+            inputFavourite.setText(suggestionsAdapter.getItem(position));
+            inputFavourite.setSelection(inputFavourite.length());
+            choosingSuggestion = false;
+            suggestionsPopup.dismiss();
+        });
+        inputFavourite.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (!choosingSuggestion) {
+                    showSuggestions(s.toString());
+                }
+            }
+        });
 
         buttonAddFavourite.setOnClickListener(v -> {
             String input = inputFavourite.getText().toString();
@@ -78,47 +115,79 @@ public class FavouritesActivity extends AppCompatActivity {
                 Toast.makeText(getApplicationContext(), "Please provide the movie title.", Toast.LENGTH_SHORT).show();
                 return;
             }
+            String title = input;
+            TitleIndex titleIndex = titleIndexLoader.get();
+            if (titleIndex != null) {
+                // The server resolves titles the same way, so it would not find it either.
+                title = titleIndex.resolve(input);
+                if (title == null) {
+                    Toast.makeText(getApplicationContext(), "Movies not found: " + input + ".", Toast.LENGTH_LONG).show();
+                    return;
+                }
+            }
             inputFavourite.getText().clear();
-            new Thread(() -> addToFavourites(input)).start();
+            // Titles entered in quick succession are submitted together.
+            favouritesOutbox.add(username, title);
         });
 
-        favouritesAdapter = new MovieListAdapter(this, R.layout.card_view_layout, favouritesCards);
-        favouritesListView.setAdapter(favouritesAdapter);
+        favouritesAdapter = new FavouritesAdapter(R.layout.card_view_layout);
+        favourites = favouritesAdapter.getFavourites();
+        favouritesAdapter.attachTo(favouritesListView);
+
+        new Thread(() -> loadFavourites(username)).start();
+    }
 
-        Toast.makeText(getApplicationContext(), "Fetching favourites...", Toast.LENGTH_SHORT).show();
-        new Thread(() -> fetchFavourites(username)).start();
+    private void showSuggestions(String text) {
+        TitleIndex titleIndex = titleIndexLoader.get();
+        List<String> suggestions = titleIndex != null
+                ? titleIndex.suggest(text, MAX_SUGGESTIONS) : Collections.emptyList();
+        suggestionsAdapter.clear();
+        suggestionsAdapter.addAll(suggestions);
+        if (suggestions.isEmpty()) {
+            suggestionsPopup.dismiss();
+        } else if (!suggestionsPopup.isShowing()) {
+            suggestionsPopup.show();
+        }
     }
 
-    private void fetchFavourites(String username) {
-        String url = HttpUrl.parse(SERVER_ENDPOINT).newBuilder()
-                .addQueryParameter("u", encodeValue(username))
-                .build().toString();
-
-        OkHttpClient client = new OkHttpClient();
-        Request request = new Request.Builder()
-                .url(url)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            Message msg = favouritesHandler.obtainMessage();
-            Bundle data = new Bundle();
-            if (response.isSuccessful()) {
-                data.putString(KEY_FAVOURITES_JSON, response.body().string());
+    /**
+     * Shows the favourites stored on the device, then the server's, which replace them unless
+     * movies were added meanwhile.
+     */
+    private void loadFavourites(String username) {
+        // A batch submitted from now on may be missing from both lists.
+        int generation = localFavourites.generation();
+        List<MovieMetadata> stored = localFavourites.get(username);
+        favouritesHandler.sendMessage(favouritesHandler.obtainMessage(
+                FAVOURITES_STORED, generation, 0, cards(stored)));
+
+        Call call = RecommenderApiClient.getInstance().favourites(username);
+        try (Response response = call.execute()) {
+            if (!response.isSuccessful()) {
+                return;
             }
-            msg.setData(data);
-            favouritesHandler.sendMessage(msg);
-        } catch (IOException e) {
+            List<MovieMetadata> fetched;
+            try (Reader body = response.body().charStream()) {
+                fetched = MovieJson.GSON.fromJson(body, MovieJson.METADATA_LIST_TYPE);
+            }
+            if (fetched == null) {
+                fetched = new ArrayList<>();
+            }
+            localFavourites.putIfUnchanged(username, fetched, generation);
+            favouritesHandler.sendMessage(favouritesHandler.obtainMessage(
+                    FAVOURITES_FETCHED, generation, 0, cards(fetched)));
+        } catch (IOException | JsonParseException e) {
+            // Offline: the stored favourites stay on screen.
             e.printStackTrace();
         }
     }
 
-    private String encodeValue(String value) {
-        try {
-            return URLEncoder.encode(value, StandardCharsets.UTF_8.toString());
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
+    private List<MovieCard> cards(List<MovieMetadata> metadata) {
+        List<MovieCard> cards = new ArrayList<>(metadata.size());
+        for (MovieMetadata m : metadata) {
+            cards.add(new MovieCard(m, MainActivity.getImageUrl(m.getMovieId(), getApplicationContext())));
         }
-        return "";
+        return cards;
     }
 
     private static class FavouritesHandler extends Handler {
@@ -132,61 +201,57 @@ public class FavouritesActivity extends AppCompatActivity {
         @Override
         public void handleMessage(Message msg) {
             FavouritesActivity activity = mActivity.get();
+            if (activity == null) {
+                return;
+            }
 
-            Bundle data = msg.getData();
-            String response = data.getString(KEY_FAVOURITES_JSON);
-            List<MovieMetadata> metadata = new Gson().fromJson(
-                    response, new TypeToken<List<MovieMetadata>>(){}.getType());
-
-            if (metadata == null || metadata.isEmpty()) {
-                Toast.makeText(activity.getApplicationContext(),
-                        "No favourite movies found.", Toast.LENGTH_LONG).show();
+            @SuppressWarnings("unchecked")
+            List<MovieCard> movieCards = (List<MovieCard>) msg.obj;
+            if (msg.arg1 != activity.localFavourites.generation()) {
+                // Older than movies added meanwhile, which replacing the list would drop.
+                activity.favourites.addAll(movieCards);
+                return;
+            }
+            if (movieCards.isEmpty()) {
+                // Without stored favourites, the list waits for the server's.
+                if (msg.what == FAVOURITES_FETCHED) {
+                    activity.favourites.replace(movieCards);
+                    Toast.makeText(activity.getApplicationContext(),
+                            "No favourite movies found.", Toast.LENGTH_LONG).show();
+                }
                 return;
             }
 
-            ArrayList<MovieCard> movieCards = new ArrayList<>();
-            metadata.forEach(m -> {
-                movieCards.add(new MovieCard(m, MainActivity.getImageUrl(m.getMovieId(), activity)));
-            });
+            // Usually the same as the stored list, so little or nothing is rebound.
+            activity.favourites.replace(movieCards);
+        }
+    }
 
-            activity.favouritesAdapter.addAll(movieCards);
-            activity.favouritesAdapter.notifyDataSetChanged();
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        suggestionsPopup.dismiss();
+        // Pending titles are still submitted, and the added movies stored.
+        favouritesOutbox.removeListener(this);
+    }
+
+    @Override
+    public void onFavouritesAdded(String username, List<MovieMetadata> added) {
+        if (username.equals(this.username)) {
+            addFavouritesHandler.sendMessage(addFavouritesHandler.obtainMessage(0, cards(added)));
         }
     }
 
-    private void addToFavourites(String title) {
-        String url = HttpUrl.parse(SERVER_ENDPOINT).newBuilder()
-                .addQueryParameter("u", encodeValue(username))
-                .build().toString();
-
-        // Body needs to be a JSON list of titles
-        String[] titles = {title};
-        RequestBody body = RequestBody.create(new Gson().toJson(titles), JSON_TYPE);
-
-        OkHttpClient client = new OkHttpClient();
-        Request request = new Request.Builder()
-                .url(url)
-                .post(body)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            Message msg = addFavouritesHandler.obtainMessage();
-            Bundle data = new Bundle();
-            if (response.isSuccessful()) {
-                data.putString(KEY_ADDED_FAVOURITES_JSON, response.body().string());
-            } else if (response.code() == 400) {
-                JSONObject res = new JSONObject(response.body().string());
-                if (res.has("error") && (res.getString("error").startsWith("Movies not found"))) {
-                    data.putString(KEY_ADDED_FAVOURITES_ERROR, res.getString("error"));
-                }
-            }
-            msg.setData(data);
-            addFavouritesHandler.sendMessage(msg);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (JSONException e) {
-            e.printStackTrace();
+    @Override
+    public void onFavouritesNotFound(String username, String error) {
+        if (!username.equals(this.username)) {
+            return;
         }
+        Message msg = addFavouritesHandler.obtainMessage();
+        Bundle data = new Bundle();
+        data.putString(KEY_ADDED_FAVOURITES_ERROR, error);
+        msg.setData(data);
+        addFavouritesHandler.sendMessage(msg);
     }
 
     private static class AddFavouritesHandler extends Handler {
@@ -200,6 +265,9 @@ public class FavouritesActivity extends AppCompatActivity {
         @Override
         public void handleMessage(Message msg) {
             FavouritesActivity activity = mActivity.get();
+            if (activity == null) {
+                return;
+            }
 
             Bundle data = msg.getData();
             String errorMsg = data.getString(KEY_ADDED_FAVOURITES_ERROR);
@@ -209,24 +277,13 @@ public class FavouritesActivity extends AppCompatActivity {
                 return;
             }
 
-            String response = data.getString(KEY_ADDED_FAVOURITES_JSON);
-            List<MovieMetadata> metadata = new Gson().fromJson(
-                    response, new TypeToken<List<MovieMetadata>>(){}.getType());
-
-            List<MovieCard> addedMovies = new ArrayList<>();
-            metadata.forEach(e -> {
-                addedMovies.add(new MovieCard(e, MainActivity.getImageUrl(e.getMovieId(), activity)));
-            });
-
-            List<Long> existingFavs = activity.favouritesCards.stream()
-                    .map(e -> e.getMetadata().getMovieId())
-                    .collect(Collectors.toList());
-            for (MovieCard addedMovie : addedMovies) {
-                if (!existingFavs.contains(addedMovie.getMetadata().getMovieId())) {
-                    activity.favouritesAdapter.add(addedMovie);
-                }
+            @SuppressWarnings("unchecked")
+            List<MovieCard> addedMovies = (List<MovieCard>) msg.obj;
+            if (addedMovies == null) {
+                return;
             }
-            activity.favouritesAdapter.notifyDataSetChanged();
+
+            activity.favourites.addAll(addedMovies);
         }
     }
 }
@@ -0,0 +1,82 @@
+package pl.edu.agh.movierecommender;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+/**
+ * The cards of a {@link FavouritesModel} in a RecyclerView.
+ *
+ * The model tells the adapter which rows it inserted, removed, moved or changed, so adding a
+ * favourite binds one new row instead of diffing the whole list.
+ */
+class FavouritesAdapter extends RecyclerView.Adapter<MovieListAdapter.ViewHolder>
+        implements FavouritesModel.Listener, PosterPrefetcher.Cards {
+
+    private final int resource;
+    private final FavouritesModel favourites = new FavouritesModel(this);
+    private final PosterPrefetcher prefetcher = new PosterPrefetcher(this);
+
+    /**
+     * @param resource layout of a card
+     */
+    FavouritesAdapter(int resource) {
+        this.resource = resource;
+        setHasStableIds(true);
+        registerAdapterDataObserver(prefetcher.dataObserver);
+    }
+
+    FavouritesModel getFavourites() {
+        return favourites;
+    }
+
+    void attachTo(RecyclerView list) {
+        MovieListAdapter.attach(list, this, prefetcher);
+    }
+
+    @Override
+    public int getItemCount() {
+        return favourites.size();
+    }
+
+    @Override
+    public MovieCard cardAt(int position) {
+        return favourites.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return favourites.get(position).getMetadata().getMovieId();
+    }
+
+    @NonNull
+    @Override
+    public MovieListAdapter.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return MovieListAdapter.ViewHolder.inflate(parent, resource);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull MovieListAdapter.ViewHolder holder, int position) {
+        holder.bind(favourites.get(position));
+    }
+
+    @Override
+    public void onInserted(int position, int count) {
+        notifyItemRangeInserted(position, count);
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+        notifyItemRangeRemoved(position, count);
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        notifyItemMoved(fromPosition, toPosition);
+    }
+
+    @Override
+    public void onChanged(int position, int count) {
+        notifyItemRangeChanged(position, count);
+    }
+}
@@ -0,0 +1,163 @@
+package pl.edu.agh.movierecommender;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.edu.agh.movierecommender.core.LongHashSet;
+
+/**
+ * The favourites shown on screen: the cards in order, and the set of their movie ids.
+ *
+ * Checking whether a movie is already a favourite is a lookup in a primitive hash set, so adding
+ * movies costs the same whatever the number of favourites. Every change is published to the
+ * {@link Listener} as the ranges inserted, removed, moved or changed, which is all a list needs
+ * to rebind the affected rows. Used on the UI thread only.
+ */
+class FavouritesModel {
+
+    interface Listener {
+        void onInserted(int position, int count);
+
+        void onRemoved(int position, int count);
+
+        void onMoved(int fromPosition, int toPosition);
+
+        void onChanged(int position, int count);
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Listener listener;
+    private List<MovieCard> cards = new ArrayList<>(INITIAL_CAPACITY);
+    private LongHashSet movieIds = new LongHashSet(INITIAL_CAPACITY);
+
+    FavouritesModel(Listener listener) {
+        this.listener = listener;
+    }
+
+    int size() {
+        return cards.size();
+    }
+
+    MovieCard get(int position) {
+        return cards.get(position);
+    }
+
+    boolean contains(long movieId) {
+        return movieIds.contains(movieId);
+    }
+
+    /**
+     * Appends the movies that are not favourites yet, e.g. the ones a POST /favourites added.
+     *
+     * @return the number of cards appended
+     */
+    int addAll(List<MovieCard> added) {
+        int position = cards.size();
+        for (MovieCard card : added) {
+            if (movieIds.add(movieId(card))) {
+                cards.add(card);
+            }
+        }
+        int count = cards.size() - position;
+        if (count > 0) {
+            listener.onInserted(position, count);
+        }
+        return count;
+    }
+
+    /**
+     * Replaces the favourites, e.g. the stored ones with the server's. Usually the lists are
+     * almost the same, and only the differences are published.
+     */
+    void replace(List<MovieCard> newCards) {
+        if (cards.isEmpty()) {
+            addAll(newCards);
+            return;
+        }
+        LongHashSet newMovieIds = new LongHashSet(newCards.size());
+        List<MovieCard> uniqueCards = new ArrayList<>(newCards.size());
+        for (MovieCard card : newCards) {
+            if (newMovieIds.add(movieId(card))) {
+                uniqueCards.add(card);
+            }
+        }
+        removeAllExcept(newMovieIds);
+
+        // What is left is in the new list too; cards are moved only if the order changed, which
+        // the server does not do, so the search for a moved card is rarely run.
+        int insertedFrom = 0;
+        int inserted = 0;
+        for (int position = 0; position < uniqueCards.size(); position++) {
+            MovieCard card = uniqueCards.get(position);
+            long movieId = movieId(card);
+            if (!movieIds.contains(movieId)) {
+                if (inserted == 0) {
+                    insertedFrom = position;
+                }
+                inserted++;
+                cards.add(position, card);
+                continue;
+            }
+            if (inserted > 0) {
+                listener.onInserted(insertedFrom, inserted);
+                inserted = 0;
+            }
+            if (movieId(cards.get(position)) != movieId) {
+                int from = indexOf(movieId, position + 1);
+                cards.add(position, cards.remove(from));
+                listener.onMoved(from, position);
+            }
+            boolean changed = !cards.get(position).showsSameAs(card);
+            cards.set(position, card);
+            if (changed) {
+                listener.onChanged(position, 1);
+            }
+        }
+        if (inserted > 0) {
+            listener.onInserted(insertedFrom, inserted);
+        }
+        movieIds = newMovieIds;
+    }
+
+    /**
+     * Removes the cards of the movies not in the set, publishing each run of adjacent cards as
+     * one removal.
+     */
+    private void removeAllExcept(LongHashSet keptMovieIds) {
+        List<MovieCard> kept = new ArrayList<>(cards.size());
+        int removedFrom = -1;
+        for (int i = 0; i < cards.size(); i++) {
+            MovieCard card = cards.get(i);
+            if (!keptMovieIds.contains(movieId(card))) {
+                if (removedFrom < 0) {
+                    removedFrom = i;
+                }
+                continue;
+            }
+            if (removedFrom >= 0) {
+                // The cards before the run are the ones kept so far.
+                listener.onRemoved(kept.size(), i - removedFrom);
+                removedFrom = -1;
+            }
+            kept.add(card);
+        }
+        if (removedFrom >= 0) {
+            listener.onRemoved(kept.size(), cards.size() - removedFrom);
+        }
+        cards = kept;
+    }
+
+    private int indexOf(long movieId, int from) {
+        for (int i = from; i < cards.size(); i++) {
+            if (movieId(cards.get(i)) == movieId) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No card of movie " + movieId);
+    }
+
+    private static long movieId(MovieCard card) {
+        return card.getMetadata().getMovieId();
+    }
+}
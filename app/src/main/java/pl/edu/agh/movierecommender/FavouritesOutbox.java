@@ -0,0 +1,256 @@
+package pl.edu.agh.movierecommender;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Response;
+
+import pl.edu.agh.movierecommender.core.TitleIndex;
+
+/**
+ * Client-side outbox for favourite titles, one per process.
+ *
+ * Titles added within a short window are sent to the server as one POST /favourites batch per
+ * user. Pending titles are kept on disk until the server has answered other than with a server
+ * error, so additions made without connectivity or during an outage are retried with a backoff
+ * and survive the app being closed; the ones left over are submitted when the process starts.
+ * Titles of a batch the server did not find are reported like a batch it found none of. The movies the server added are stored on the device
+ * whether or not a screen is listening. All state is confined to the outbox's single thread,
+ * the only one writing its file.
+ */
+class FavouritesOutbox {
+
+    static final long BATCH_WINDOW_MILLIS = 500;
+
+    private static final long MIN_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final String FILE_NAME = "favourites_outbox.json";
+    private static final Type PENDING_TYPE = new TypeToken<Map<String, List<String>>>() {}.getType();
+
+    /**
+     * Told about the server's answers to submitted batches, on the outbox thread.
+     */
+    interface Listener {
+        /**
+         * @param added the movies the server added, already stored on the device
+         */
+        void onFavouritesAdded(String username, List<MovieMetadata> added);
+
+        void onFavouritesNotFound(String username, String error);
+    }
+
+    private static FavouritesOutbox instance;
+
+    private final Context context;
+    private final File file;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+
+    // Pending titles by user.
+    private Map<String, List<String>> pending = new HashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private long retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+
+    private FavouritesOutbox(Context context) {
+        this.context = context;
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        executor.execute(() -> {
+            load();
+            if (!pending.isEmpty()) {
+                scheduleFlush(0);
+            }
+        });
+    }
+
+    static synchronized FavouritesOutbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new FavouritesOutbox(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    void add(String username, String title) {
+        executor.execute(() -> {
+            List<String> titles = pending.get(username);
+            if (titles == null) {
+                titles = new ArrayList<>();
+                pending.put(username, titles);
+            }
+            if (!titles.contains(title)) {
+                titles.add(title);
+                save();
+            }
+            scheduleFlush(BATCH_WINDOW_MILLIS);
+        });
+    }
+
+    private void scheduleFlush(long delayMillis) {
+        if (scheduledFlush != null && !scheduledFlush.isDone()) {
+            return;
+        }
+        scheduledFlush = executor.schedule(this::flush, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        for (String username : new ArrayList<>(pending.keySet())) {
+            if (!submit(username)) {
+                // No connectivity, keep the titles and try again later.
+                scheduledFlush = executor.schedule(this::flush, retryDelayMillis, TimeUnit.MILLISECONDS);
+                retryDelayMillis = Math.min(retryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+                return;
+            }
+        }
+        retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+    }
+
+    /**
+     * @return false if the server could not be reached or failed, the titles are then kept
+     */
+    private boolean submit(String username) {
+        List<String> titles = pending.get(username);
+        List<String> batch = new ArrayList<>(titles);
+        try (Response response = RecommenderApiClient.getInstance().addFavourites(username, batch).execute()) {
+            if (response.code() >= 500) {
+                // The server or a proxy failed, the titles may not have been added.
+                return false;
+            }
+            // Any other answer is final, e.g. titles the server does not know will not appear on retry.
+            titles.removeAll(batch);
+            save();
+            try {
+                onSubmitted(username, batch, response);
+            } catch (IOException | JSONException | JsonParseException e) {
+                e.printStackTrace();
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void onSubmitted(String username, List<String> batch, Response response)
+            throws IOException, JSONException {
+        if (response.isSuccessful()) {
+            // Cached recommendations were computed for the old favourites.
+            RecommendationCache.getInstance(context).invalidate(username);
+            List<MovieMetadata> added = MovieJson.GSON.fromJson(
+                    response.body().charStream(), MovieJson.METADATA_LIST_TYPE);
+            if (added == null) {
+                added = new ArrayList<>();
+            }
+            try {
+                LocalFavouritesStore.getInstance(context).add(username, added);
+            } catch (IOException e) {
+                // Stored again with the next GET /favourites.
+                e.printStackTrace();
+            }
+            for (Listener listener : listeners) {
+                listener.onFavouritesAdded(username, added);
+            }
+            // The server only answers 400 when it knows none of the titles, so the others of a
+            // batch are found missing from the movies it added.
+            List<String> notFound = notFound(batch, added);
+            if (!notFound.isEmpty()) {
+                String error = "Movies not found: " + TextUtils.join(", ", notFound) + ".";
+                for (Listener listener : listeners) {
+                    listener.onFavouritesNotFound(username, error);
+                }
+            }
+        } else if (response.code() == 400) {
+            JSONObject res = new JSONObject(response.body().string());
+            if (res.has("error") && (res.getString("error").startsWith("Movies not found"))) {
+                for (Listener listener : listeners) {
+                    listener.onFavouritesNotFound(username, res.getString("error"));
+                }
+            }
+        }
+    }
+
+    /**
+     * The titles of the batch resolving to none of the added movies, the way the server
+     * resolves them.
+     */
+    private static List<String> notFound(List<String> batch, List<MovieMetadata> added) {
+        List<String> addedTitles = new ArrayList<>(added.size());
+        for (MovieMetadata movie : added) {
+            if (movie.getTitle() != null) {
+                addedTitles.add(movie.getTitle());
+            }
+        }
+        TitleIndex index = new TitleIndex(addedTitles);
+        List<String> notFound = new ArrayList<>();
+        for (String title : batch) {
+            if (index.resolve(title) == null) {
+                notFound.add(title);
+            }
+        }
+        return notFound;
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            Map<String, List<String>> stored = MovieJson.GSON.fromJson(reader, PENDING_TYPE);
+            if (stored != null) {
+                pending = new HashMap<>(stored);
+                pending.replaceAll((user, titles) -> new ArrayList<>(titles));
+            }
+        } catch (IOException | JsonParseException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void save() {
+        pending.values().removeIf(List::isEmpty);
+        if (pending.isEmpty()) {
+            file.delete();
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            MovieJson.GSON.toJson(pending, PENDING_TYPE, writer);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package pl.edu.agh.movierecommender;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import pl.edu.agh.movierecommender.core.LongHashSet;
+
+/**
+ * The user's favourite movies as last known on the device, so the Favourites screen renders at
+ * once and then reconciles with GET /favourites in the background.
+ *
+ * Each user's list is one small binary file of {@link MovieMetadata} records, replaced as a
+ * whole. Reads and writes do file I/O and belong on a worker thread.
+ */
+class LocalFavouritesStore {
+
+    private static final String DIRECTORY_NAME = "favourites";
+    private static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 8192;
+
+    private static LocalFavouritesStore instance;
+
+    private final File directory;
+    // Bumped by every add(), so a list read or fetched before it is not put back over it.
+    private volatile int generation;
+
+    private LocalFavouritesStore(File directory) {
+        this.directory = directory;
+    }
+
+    static synchronized LocalFavouritesStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocalFavouritesStore(new File(context.getFilesDir(), DIRECTORY_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * The number of additions so far; a list of favourites read or fetched before an addition
+     * may lack its movies. Does no I/O.
+     */
+    int generation() {
+        return generation;
+    }
+
+    /**
+     * The stored favourites of the user, empty if there are none or they cannot be read.
+     */
+    synchronized List<MovieMetadata> get(String username) {
+        File file = file(username);
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                file.delete();
+                return Collections.emptyList();
+            }
+            int count = in.readInt();
+            List<MovieMetadata> favourites = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                favourites.add(readMovie(in));
+            }
+            return favourites;
+        } catch (IOException e) {
+            e.printStackTrace();
+            file.delete();
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Replaces the user's favourites, e.g. with the server's list.
+     */
+    synchronized void put(String username, List<MovieMetadata> favourites) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create favourites directory " + directory);
+        }
+        File file = file(username);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(favourites.size());
+            for (MovieMetadata movie : favourites) {
+                writeMovie(out, movie);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot move favourites to " + file);
+        }
+    }
+
+    /**
+     * Replaces the user's favourites with a list read or fetched at the given generation, unless
+     * movies were added since.
+     *
+     * @return whether the favourites were replaced
+     */
+    synchronized boolean putIfUnchanged(String username, List<MovieMetadata> favourites, int generation)
+            throws IOException {
+        if (generation != this.generation) {
+            return false;
+        }
+        put(username, favourites);
+        return true;
+    }
+
+    /**
+     * Appends the movies the user is not known to like yet, e.g. the ones a POST /favourites
+     * added.
+     *
+     * @return the user's favourites afterwards
+     */
+    synchronized List<MovieMetadata> add(String username, List<MovieMetadata> added) throws IOException {
+        generation++;
+        List<MovieMetadata> favourites = new ArrayList<>(get(username));
+        LongHashSet movieIds = new LongHashSet(favourites.size() + added.size());
+        for (MovieMetadata movie : favourites) {
+            movieIds.add(movie.getMovieId());
+        }
+        for (MovieMetadata movie : added) {
+            if (movieIds.add(movie.getMovieId())) {
+                favourites.add(movie);
+            }
+        }
+        put(username, favourites);
+        return favourites;
+    }
+
+    private File file(String username) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(username.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            }
+            return new File(directory, name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available on Android.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeMovie(DataOutputStream out, MovieMetadata movie) throws IOException {
+        out.writeLong(movie.getMovieId());
+        writeString(out, movie.getTitle());
+        writeString(out, movie.getDirector());
+        writeString(out, movie.getGenres());
+        writeString(out, movie.getActor1());
+        writeString(out, movie.getActor2());
+        writeString(out, movie.getActor3());
+        writeString(out, movie.getPlotKeywords());
+        writeString(out, movie.getLanguage());
+        writeString(out, movie.getCountry());
+        out.writeDouble(movie.getImdbScore());
+    }
+
+    private static MovieMetadata readMovie(DataInputStream in) throws IOException {
+        MovieMetadata movie = new MovieMetadata();
+        movie.setMovieId(in.readLong());
+        movie.setTitle(readString(in));
+        movie.setDirector(readString(in));
+        movie.setGenres(readString(in));
+        movie.setActor1(readString(in));
+        movie.setActor2(readString(in));
+        movie.setActor3(readString(in));
+        movie.setPlotKeywords(readString(in));
+        movie.setLanguage(readString(in));
+        movie.setCountry(readString(in));
+        movie.setImdbScore(in.readDouble());
+        return movie;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // Fields missing from the server's metadata are null.
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -5,7 +5,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.content.res.Resources;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
@@ -18,34 +17,28 @@ import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.view.ViewPager;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.RecyclerView;
 import android.widget.Button;
 import android.widget.ImageButton;
-import android.widget.ListView;
 import android.widget.RadioButton;
 import android.widget.RadioGroup;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonParseException;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.Reader;
 import java.lang.ref.WeakReference;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.net.HttpURLConnection;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.List;
 import java.util.Map;
 
-import okhttp3.HttpUrl;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
+import okhttp3.Call;
 import okhttp3.Response;
 
 public class MainActivity extends AppCompatActivity {
@@ -56,7 +49,6 @@ public class MainActivity extends AppCompatActivity {
     protected static final String MOVIE_RECOMMENDER_PREFS_KEY = "MOVIE_RECOMMENDER_PREFS_KEY";
     protected static final int FAVS_REQUEST_CODE = 159;
 
-    private static final String KEY_RECOMMENDATIONS_JSON = "KEY_RECOMMENDATIONS_JSON";
     private static final String KEY_RECOMMENDATIONS_ERROR = "KEY_RECOMMENDATIONS_ERROR";
     private static final int MY_PERMISSIONS_REQUEST_LOCATION = 147;
 
@@ -71,14 +63,22 @@ public class MainActivity extends AppCompatActivity {
     private RadioGroup radioGroupCompanion;
     private Button buttonRecommend;
     private ImageButton buttonSettings;
-    private ListView collabMovieListView ;
-    private ListView contentMovieListView ;
+    private RecyclerView collabMovieListView;
+    private RecyclerView contentMovieListView;
+    private MovieListAdapter collabAdapter;
+    private MovieListAdapter contentAdapter;
+    private RecommendationPager collabPager;
+    private RecommendationPager contentPager;
 
     private final SimpleDateFormat dateTimeFormat = new SimpleDateFormat("HH:mm, EEE, MMM d, yyyy");
     private Calendar calendar = Calendar.getInstance();
     private String username;
 
     private Handler recommendationHandler;
+    private MovieCardDecoder cardDecoder;
+    private RecommendationCache recommendationCache;
+    private RecommendationRequestManager requestManager;
+    private RecommendationPrefetcher prefetcher;
     private LocationManager locationManager;
     private LocationProvider locationProvider;
     private LocationListener locationListener;
@@ -102,6 +102,13 @@ public class MainActivity extends AppCompatActivity {
         } else{
             accessLocation();
         }
+
+        if (!username.isEmpty()) {
+            // Warm the cache for the other contexts while the user is choosing one.
+            String timeOfWeek = getTimeOfWeek(calendar.get(Calendar.DAY_OF_WEEK));
+            prefetcher = new RecommendationPrefetcher(recommendationCache, username, timeOfWeek);
+            prefetcher.start();
+        }
     }
 
     @Override
@@ -173,8 +180,16 @@ public class MainActivity extends AppCompatActivity {
 
         collabMovieListView = findViewById(R.id.listViewForCollab);
         contentMovieListView = findViewById(R.id.listViewForContent);
+        collabAdapter = new MovieListAdapter(R.layout.card_view_layout);
+        contentAdapter = new MovieListAdapter(R.layout.card_view_layout);
 
         recommendationHandler = new RecommendationHandler(this);
+        final Context appContext = getApplicationContext();
+        cardDecoder = new MovieCardDecoder(movieId -> getImageUrl(movieId, appContext));
+        recommendationCache = RecommendationCache.getInstance(appContext);
+        requestManager = new RecommendationRequestManager();
+        collabPager = new RecommendationPager(collabAdapter, cardDecoder, username);
+        contentPager = new RecommendationPager(contentAdapter, cardDecoder, username);
 
         locationListener = new LocationListener() {
             @Override
@@ -226,8 +241,12 @@ public class MainActivity extends AppCompatActivity {
                 Toast.makeText(getApplicationContext(), "Please fill the context information.", Toast.LENGTH_SHORT).show();
                 return;
             }
-            Toast.makeText(getApplicationContext(), "Searching for recommendations...", Toast.LENGTH_SHORT).show();
-            new Thread(() -> requestRecommendations(timeOfWeek, location, companion)).start();
+            String requestKey = RecommendationCache.key(username, timeOfWeek, location, companion);
+            boolean submitted = requestManager.submit(requestKey,
+                    request -> requestRecommendations(request, timeOfWeek, location, companion));
+            if (submitted) {
+                Toast.makeText(getApplicationContext(), "Searching for recommendations...", Toast.LENGTH_SHORT).show();
+            }
         });
 
     }
@@ -242,6 +261,13 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onStop() {
         super.onStop();
+        requestManager.cancelAll();
+        collabPager.cancel();
+        contentPager.cancel();
+        if (prefetcher != null) {
+            prefetcher.cancel();
+            prefetcher = null;
+        }
         if (locationProvider != null) {
             // Toast.makeText(this, "Location listener unregistered!", Toast.LENGTH_SHORT).show();
             try {
@@ -255,30 +281,60 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void requestRecommendations(String timeOfWeek, String location, String companion) {
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        requestManager.shutdown();
+    }
+
+    private void requestRecommendations(RecommendationRequestManager.PendingRequest request,
+                                        String timeOfWeek, String location, String companion) {
         // Should already be set up.
         // username = sharedPrefs.getString(KEY_USERNAME, "default");
-        String url = HttpUrl.parse(SERVER_ADDRESS).newBuilder()
-                .addQueryParameter("u", encodeValue(username))
-                .addQueryParameter("t", encodeValue(timeOfWeek))
-                .addQueryParameter("loc", encodeValue(location))
-                .addQueryParameter("comp", encodeValue(companion))
-                .build().toString();
-
-        OkHttpClient client = new OkHttpClient();
-        Request request = new Request.Builder()
-                .url(url)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            Message msg = recommendationHandler.obtainMessage();
+        String cacheKey = RecommendationCache.key(username, timeOfWeek, location, companion);
+        RecommendationCache.Entry cached = recommendationCache.get(cacheKey);
+        if (cached != null) {
+            // Show the cached lists at once, then revalidate them with the server if stale.
+            Map<String, MovieCardPage> cachedCards = readCachedRecommendations(cached);
+            if (cachedCards != null) {
+                Message msg = obtainRecommendationMessage(request);
+                msg.obj = cachedCards;
+                recommendationHandler.sendMessage(msg);
+                if (cached.isFresh()) {
+                    return;
+                }
+            } else {
+                cached = null;
+            }
+        }
+
+        Call call = RecommenderApiClient.getInstance()
+                .recommendations(username, timeOfWeek, location, companion,
+                        cached != null ? cached.getEtag() : null);
+        if (!request.attach(call)) {
+            return;
+        }
+
+        try (Response response = call.execute()) {
+            if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // The cached lists are already shown.
+                recommendationCache.touch(cacheKey);
+                return;
+            }
+            Message msg = obtainRecommendationMessage(request);
             Bundle data = new Bundle();
             // Response contains recommendations or error.
             if (response.isSuccessful()) {
-                data.putString(KEY_RECOMMENDATIONS_JSON, response.body().string());
+                // Stream the body to the cache and decode it from there, off the UI thread.
+                RecommendationCache.Entry stored = recommendationCache.put(
+                        cacheKey, response.header("ETag"), response.body().byteStream());
+                try (Reader body = stored.openBody()) {
+                    msg.obj = cardDecoder.decodeRecommendations(body);
+                }
             } else if (response.code() == 400) {
                 JSONObject res = new JSONObject(response.body().string());
                 if (res.has("error") && (res.getString("error").startsWith("No favourite"))) {
+                    recommendationCache.invalidate(username);
                     data.putString(KEY_RECOMMENDATIONS_ERROR,
                             "Please add your favourite movies in the profile settings.");
                 }
@@ -286,19 +342,29 @@ public class MainActivity extends AppCompatActivity {
             msg.setData(data);
             recommendationHandler.sendMessage(msg);
         } catch (IOException e) {
-            e.printStackTrace();
+            // Cancelled calls fail with an IOException, nothing to report then.
+            if (!request.isCancelled()) {
+                e.printStackTrace();
+            }
         } catch (JSONException e) {
             e.printStackTrace();
+        } catch (JsonParseException | IllegalStateException e) {
+            e.printStackTrace();
         }
     }
 
-    private String encodeValue(String value) {
-        try {
-            return URLEncoder.encode(value, StandardCharsets.UTF_8.toString());
-        } catch (UnsupportedEncodingException e) {
+    private Message obtainRecommendationMessage(RecommendationRequestManager.PendingRequest request) {
+        // arg1 carries the generation, so the handler can drop results of superseded requests.
+        return recommendationHandler.obtainMessage(0, request.getGeneration(), 0);
+    }
+
+    private Map<String, MovieCardPage> readCachedRecommendations(RecommendationCache.Entry entry) {
+        try (Reader body = entry.openBody()) {
+            return cardDecoder.decodeRecommendations(body);
+        } catch (IOException | JsonParseException | IllegalStateException e) {
             e.printStackTrace();
+            return null;
         }
-        return "";
     }
 
     private static class RecommendationHandler extends Handler {
@@ -311,6 +377,9 @@ public class MainActivity extends AppCompatActivity {
         @Override
         public void handleMessage(Message msg) {
             MainActivity activity = mActivity.get();
+            if (activity == null || !activity.requestManager.isCurrent(msg.arg1)) {
+                return;
+            }
 
             Bundle data = msg.getData();
             String errorMsg = data.getString(KEY_RECOMMENDATIONS_ERROR);
@@ -320,33 +389,24 @@ public class MainActivity extends AppCompatActivity {
                 return;
             }
 
-            String response = data.getString(KEY_RECOMMENDATIONS_JSON);
-            Map<String, List<MovieMetadata>> metadataMap = new Gson().fromJson(
-                    response, new TypeToken<Map<String, List<MovieMetadata>>>() {}.getType());
-
-            for (String key : metadataMap.keySet()) {
-                switch (key) {
-                    case "collab":
-                        ArrayList<MovieCard> movieCards = new ArrayList<>();
-                        metadataMap.get(key).forEach(e -> {
-                            // String movieId = String.format("tt%07d", e.getMovieId());
-                            movieCards.add(new MovieCard(e, getImageUrl(e.getMovieId(), activity)));
-                        });
+            @SuppressWarnings("unchecked")
+            Map<String, MovieCardPage> recommendations = (Map<String, MovieCardPage>) msg.obj;
+            if (recommendations == null) {
+                return;
+            }
 
-                        MovieListAdapter adapter = new MovieListAdapter(activity, R.layout.card_view_layout, movieCards);
+            for (Map.Entry<String, MovieCardPage> entry : recommendations.entrySet()) {
+                switch (entry.getKey()) {
+                    case MovieCardDecoder.KEY_COLLAB:
+                        // The lists are in the view pager's fragments, which may have been recreated.
                         activity.collabMovieListView = activity.findViewById(R.id.listViewForCollab);
-                        activity.collabMovieListView.setAdapter(adapter);
+                        activity.collabPager.attachTo(activity.collabMovieListView);
+                        activity.collabPager.show(entry.getValue());
                         break;
-                    case "content":
-                        ArrayList<MovieCard> contentBasedCards = new ArrayList<>();
-                        metadataMap.get(key).forEach(e -> {
-                            // String movieId = String.format("tt%07d", e.getMovieId());
-                            contentBasedCards.add(new MovieCard(e, getImageUrl(e.getMovieId(), activity)));
-                        });
-
-                        MovieListAdapter contentBasedAdapter = new MovieListAdapter(activity, R.layout.card_view_layout, contentBasedCards);
+                    case MovieCardDecoder.KEY_CONTENT:
                         activity.contentMovieListView = activity.findViewById(R.id.listViewForContent);
-                        activity.contentMovieListView.setAdapter(contentBasedAdapter);
+                        activity.contentPager.attachTo(activity.contentMovieListView);
+                        activity.contentPager.show(entry.getValue());
                         break;
                 }
             }
@@ -364,12 +424,6 @@ public class MainActivity extends AppCompatActivity {
     }
 
     protected static String getImageUrl(long movieId, Context context) {
-//        Resources resources = context.getResources();
-//        final int resourceId = resources.getIdentifier(String.format("tt%07d.jpg", movieId), "drawable",
-//                context.getPackageName());
-//        if (resourceId == 0) {
-//            return "drawable://" + R.drawable.image_failed;
-//        }
-        return "drawable://" + R.drawable.tt0133093;
+        return PosterResolver.getInstance(context).url(movieId);
     }
 }
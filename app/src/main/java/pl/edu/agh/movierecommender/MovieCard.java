@@ -1,5 +1,7 @@
 package pl.edu.agh.movierecommender;
 
+import java.util.Objects;
+
 public class MovieCard {
 
     private MovieMetadata metadata;
@@ -25,4 +27,13 @@ public class MovieCard {
     public void setImgUrl(String imgUrl) {
         this.imgUrl = imgUrl;
     }
+
+    /**
+     * Whether the cards show the same, i.e. title, director and poster.
+     */
+    boolean showsSameAs(MovieCard other) {
+        return Objects.equals(metadata.getTitle(), other.metadata.getTitle())
+                && Objects.equals(metadata.getDirector(), other.metadata.getDirector())
+                && Objects.equals(imgUrl, other.imgUrl);
+    }
 }
@@ -0,0 +1,124 @@
+package pl.edu.agh.movierecommender;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+/**
+ * Streams server responses straight into {@link MovieCard} lists.
+ *
+ * Meant to run on the worker thread that executed the request, so the UI thread only
+ * receives ready-made cards and the body is never materialized as a String or a parse tree.
+ */
+class MovieCardDecoder {
+
+    static final String KEY_COLLAB = "collab";
+    static final String KEY_CONTENT = "content";
+    static final String KEY_NEXT = "next";
+    static final String KEY_MOVIES = "movies";
+
+    private static final TypeAdapter<MovieMetadata> METADATA_ADAPTER = MovieJson.GSON.getAdapter(MovieMetadata.class);
+
+    private final LongFunction<String> imageUrls;
+
+    /**
+     * @param imageUrls maps a movie id to the image url shown on its card
+     */
+    MovieCardDecoder(LongFunction<String> imageUrls) {
+        this.imageUrls = imageUrls;
+    }
+
+    /**
+     * Decodes a GET / response, e.g.
+     * {"collab": [...], "content": [...], "next": {"collab": "...", "content": null}}, into the
+     * first page of every list. Lists the server gave no cursor for have no further pages.
+     */
+    Map<String, MovieCardPage> decodeRecommendations(Reader reader) throws IOException {
+        Map<String, List<MovieCard>> lists = new HashMap<>();
+        Map<String, String> next = new HashMap<>();
+        JsonReader json = newJsonReader(reader);
+        json.beginObject();
+        while (json.hasNext()) {
+            String key = json.nextName();
+            if (key.equals(KEY_NEXT)) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    next.put(json.nextName(), readCursor(json));
+                }
+                json.endObject();
+            } else {
+                lists.put(key, readCards(json));
+            }
+        }
+        json.endObject();
+
+        Map<String, MovieCardPage> recommendations = new HashMap<>();
+        for (Map.Entry<String, List<MovieCard>> list : lists.entrySet()) {
+            recommendations.put(list.getKey(), new MovieCardPage(list.getValue(), next.get(list.getKey())));
+        }
+        return recommendations;
+    }
+
+    /**
+     * Decodes a GET /more response, {"movies": [...], "next": "..."}.
+     */
+    MovieCardPage decodePage(Reader reader) throws IOException {
+        List<MovieCard> cards = new ArrayList<>();
+        String next = null;
+        JsonReader json = newJsonReader(reader);
+        json.beginObject();
+        while (json.hasNext()) {
+            String key = json.nextName();
+            if (key.equals(KEY_MOVIES)) {
+                cards = readCards(json);
+            } else if (key.equals(KEY_NEXT)) {
+                next = readCursor(json);
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        return new MovieCardPage(cards, next);
+    }
+
+    /**
+     * Decodes a JSON list of movie metadata, e.g. a /favourites response.
+     */
+    List<MovieCard> decodeCards(Reader reader) throws IOException {
+        return readCards(newJsonReader(reader));
+    }
+
+    private static JsonReader newJsonReader(Reader reader) {
+        JsonReader json = new JsonReader(reader);
+        // Same as Gson.fromJson, e.g. the server writes NaN for missing scores.
+        json.setLenient(true);
+        return json;
+    }
+
+    private static String readCursor(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        return json.nextString();
+    }
+
+    private List<MovieCard> readCards(JsonReader json) throws IOException {
+        List<MovieCard> cards = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            MovieMetadata metadata = METADATA_ADAPTER.read(json);
+            cards.add(new MovieCard(metadata, imageUrls.apply(metadata.getMovieId())));
+        }
+        json.endArray();
+        return cards;
+    }
+}
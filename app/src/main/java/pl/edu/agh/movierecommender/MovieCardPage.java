@@ -0,0 +1,28 @@
+package pl.edu.agh.movierecommender;
+
+import java.util.List;
+
+/**
+ * A page of a recommendation list: its cards, and the server's cursor of the next page.
+ */
+class MovieCardPage {
+
+    private final List<MovieCard> cards;
+    private final String next;
+
+    MovieCardPage(List<MovieCard> cards, String next) {
+        this.cards = cards;
+        this.next = next;
+    }
+
+    List<MovieCard> getCards() {
+        return cards;
+    }
+
+    /**
+     * The cursor to fetch the next page with, null if this is the last page.
+     */
+    String getNext() {
+        return next;
+    }
+}
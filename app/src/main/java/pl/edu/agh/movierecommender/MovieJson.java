@@ -0,0 +1,28 @@
+package pl.edu.agh.movierecommender;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Shared Gson setup for the recommender API payloads.
+ *
+ * Gson instances are thread-safe and cache their type adapters, so one instance is used for
+ * the whole process instead of creating a new one per message.
+ */
+final class MovieJson {
+
+    static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(MovieMetadata.class, new MovieMetadataTypeAdapter())
+            .create();
+
+    static final Type METADATA_LIST_TYPE = new TypeToken<List<MovieMetadata>>() {}.getType();
+
+    static final Type TITLE_LIST_TYPE = new TypeToken<List<String>>() {}.getType();
+
+    private MovieJson() {
+    }
+}
@@ -1,140 +1,122 @@
 package pl.edu.agh.movierecommender;
 
-import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.animation.Animation;
-import android.view.animation.AnimationUtils;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.nostra13.universalimageloader.cache.memory.impl.WeakMemoryCache;
-import com.nostra13.universalimageloader.core.DisplayImageOptions;
 import com.nostra13.universalimageloader.core.ImageLoader;
-import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
-import com.nostra13.universalimageloader.core.assist.ImageScaleType;
-import com.nostra13.universalimageloader.core.display.FadeInBitmapDisplayer;
 
 import java.util.List;
 
-class MovieListAdapter extends ArrayAdapter<MovieCard> {
-
-    private Context mContext;
-    private int mResource;
-    private int lastPosition = -1;
+/**
+ * Movie cards in a RecyclerView.
+ *
+ * Rows are recycled through {@link ViewHolder}s and a new list is shown with
+ * {@link #submitList(List)}, which diffs it against the current one on a background thread and
+ * only rebinds the cards that changed. Items have stable ids, the movie ids, so a card keeps its
+ * view when it moves. Posters of the rows ahead are loaded while scrolling, see
+ * {@link PosterPrefetcher}.
+ */
+class MovieListAdapter extends ListAdapter<MovieCard, MovieListAdapter.ViewHolder>
+        implements PosterPrefetcher.Cards {
+
+    private static final DiffUtil.ItemCallback<MovieCard> DIFF_CALLBACK = new DiffUtil.ItemCallback<MovieCard>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull MovieCard oldCard, @NonNull MovieCard newCard) {
+            return oldCard.getMetadata().getMovieId() == newCard.getMetadata().getMovieId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull MovieCard oldCard, @NonNull MovieCard newCard) {
+            return oldCard.showsSameAs(newCard);
+        }
+    };
+
+    private final int resource;
+    private final PosterPrefetcher prefetcher = new PosterPrefetcher(this);
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView title;
+        final TextView director;
+        final ImageView image;
+
+        ViewHolder(View view) {
+            super(view);
+            title = view.findViewById(R.id.textViewCardTitle);
+            director = view.findViewById(R.id.textViewCardDirector);
+            image = view.findViewById(R.id.imageViewCard);
+        }
+
+        static ViewHolder inflate(ViewGroup parent, int resource) {
+            return new ViewHolder(LayoutInflater.from(parent.getContext()).inflate(resource, parent, false));
+        }
+
+        void bind(MovieCard card) {
+            title.setText(card.getMetadata().getTitle());
+            director.setText(card.getMetadata().getDirector());
+            ImageLoader.getInstance().displayImage(card.getImgUrl(), image,
+                    MovieRecommenderApplication.POSTER_OPTIONS);
+        }
+    }
 
-    private List<MovieCard> cards;
+    /**
+     * @param resource layout of a card
+     */
+    MovieListAdapter(int resource) {
+        super(DIFF_CALLBACK);
+        this.resource = resource;
+        setHasStableIds(true);
+        registerAdapterDataObserver(prefetcher.dataObserver);
+    }
 
     /**
-     * Holds variables in a View
+     * Shows the adapter's cards in the list, unless it already does.
      */
-    private static class ViewHolder {
-        TextView title;
-        TextView director;
-        ImageView image;
+    void attachTo(RecyclerView list) {
+        attach(list, this, prefetcher);
     }
 
     /**
-     * Default constructor for the MovieListAdapter
-     * @param context
-     * @param resource
-     * @param objects
+     * Shows a card adapter's cards in the list, unless it already does, prefetching their
+     * posters with the adapter's prefetcher, which is registered with the adapter once.
      */
-    public MovieListAdapter(Context context, int resource, List<MovieCard> objects) {
-        super(context, resource, objects);
-        mContext = context;
-        mResource = resource;
-        cards = objects;
+    static void attach(RecyclerView list, RecyclerView.Adapter<ViewHolder> adapter, PosterPrefetcher prefetcher) {
+        if (list.getAdapter() == adapter) {
+            return;
+        }
+        list.setLayoutManager(new LinearLayoutManager(list.getContext()));
+        // The list fills its parent whatever it holds, so updates do not relayout the screen.
+        list.setHasFixedSize(true);
+        list.setAdapter(adapter);
+        list.removeOnScrollListener(prefetcher);
+        list.addOnScrollListener(prefetcher);
     }
 
     @Override
-    public void notifyDataSetChanged() {
-        super.notifyDataSetChanged();
+    public MovieCard cardAt(int position) {
+        return getItem(position);
     }
 
-    @NonNull
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-
-        //sets up the image loader library
-        setupImageLoader();
-
-        //get the movie information
-        // TODO: Fill the remaining data
-        String title = getItem(position).getMetadata().getTitle();
-        String director = getItem(position).getMetadata().getDirector();
-        String imgUrl = getItem(position).getImgUrl();
-
-        //create the view result for showing the animation
-        final View result;
-
-        //ViewHolder object
-        ViewHolder holder;
-
-//        if (convertView == null) {
-            LayoutInflater inflater = LayoutInflater.from(mContext);
-            convertView = inflater.inflate(mResource, parent, false);
-            holder= new ViewHolder();
-            holder.title = convertView.findViewById(R.id.textViewCardTitle);
-            holder.director = convertView.findViewById(R.id.textViewCardDirector);
-            // holder.url = convertView.findViewById(R.id.te);
-            holder.image = convertView.findViewById(R.id.imageViewCard);
-
-            result = convertView;
-
-            convertView.setTag(holder);
-//        } else {
-//            holder = (ViewHolder) convertView.getTag();
-//            result = convertView;
-//        }
-
-
-        Animation animation = AnimationUtils.loadAnimation(mContext,
-                (position > lastPosition) ? R.anim.load_down_anim : R.anim.load_up_anim);
-        result.startAnimation(animation);
-        lastPosition = position;
-
-        holder.title.setText(title);
-        holder.director.setText(director);
-//        holder.url.setText(url);
-
-        //create the imageloader object
-        ImageLoader imageLoader = ImageLoader.getInstance();
-        int defaultImage = mContext.getResources().getIdentifier("drawable://" + R.drawable.image_failed,null, mContext.getPackageName());
-
-        //create display options
-        DisplayImageOptions options = new DisplayImageOptions.Builder().cacheInMemory(true)
-                .cacheOnDisc(true).resetViewBeforeLoading(true)
-                .showImageForEmptyUri(defaultImage)
-                .showImageOnFail(defaultImage)
-                .showImageOnLoading(defaultImage).build();
-
-        //download and display image from url
-        imageLoader.displayImage(imgUrl, holder.image, options);
+    public long getItemId(int position) {
+        return getItem(position).getMetadata().getMovieId();
+    }
 
-        return convertView;
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return ViewHolder.inflate(parent, resource);
     }
 
-    /**
-     * Required for setting up the Universal Image loader Library
-     */
-    private void setupImageLoader(){
-        // UNIVERSAL IMAGE LOADER SETUP
-        DisplayImageOptions defaultOptions = new DisplayImageOptions.Builder()
-                .cacheOnDisc(true).cacheInMemory(true)
-                .imageScaleType(ImageScaleType.EXACTLY)
-                .displayer(new FadeInBitmapDisplayer(300)).build();
-
-        ImageLoaderConfiguration config = new ImageLoaderConfiguration.Builder(
-                mContext)
-                .defaultDisplayImageOptions(defaultOptions)
-                .memoryCache(new WeakMemoryCache())
-                .discCacheSize(100 * 1024 * 1024).build();
-
-        ImageLoader.getInstance().init(config);
-        // END - UNIVERSAL IMAGE LOADER SETUP
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        holder.bind(getItem(position));
     }
 }
@@ -1,17 +1,33 @@
 package pl.edu.agh.movierecommender;
 
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Movie metadata as sent by the server, field names follow its JSON keys.
+ */
 class MovieMetadata {
 
+    @SerializedName("movie_id")
     private long movieId;
+    @SerializedName("title")
     private String title;
+    @SerializedName("director")
     private String director;
+    @SerializedName("genres")
     private String genres;
+    @SerializedName("actor_1")
     private String actor1;
+    @SerializedName("actor_2")
     private String actor2;
+    @SerializedName("actor_3")
     private String actor3;
+    @SerializedName("plot_keywords")
     private String plotKeywords;
+    @SerializedName("language")
     private String language;
+    @SerializedName("country")
     private String country;
+    @SerializedName("imdb_score")
     private double imdbScore;
 
     public MovieMetadata() {
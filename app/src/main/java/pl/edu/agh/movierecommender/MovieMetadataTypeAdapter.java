@@ -0,0 +1,114 @@
+package pl.edu.agh.movierecommender;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Reflection-free binding of {@link MovieMetadata} to the JSON objects sent by the server.
+ *
+ * Reads and writes the same field names as the reflective Gson binding of the annotated
+ * {@link MovieMetadata} fields; unknown fields are skipped.
+ */
+class MovieMetadataTypeAdapter extends TypeAdapter<MovieMetadata> {
+
+    static final String MOVIE_ID = "movie_id";
+    static final String TITLE = "title";
+    static final String DIRECTOR = "director";
+    static final String GENRES = "genres";
+    static final String ACTOR_1 = "actor_1";
+    static final String ACTOR_2 = "actor_2";
+    static final String ACTOR_3 = "actor_3";
+    static final String PLOT_KEYWORDS = "plot_keywords";
+    static final String LANGUAGE = "language";
+    static final String COUNTRY = "country";
+    static final String IMDB_SCORE = "imdb_score";
+
+    @Override
+    public void write(JsonWriter out, MovieMetadata metadata) throws IOException {
+        if (metadata == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name(MOVIE_ID).value(metadata.getMovieId());
+        writeString(out, TITLE, metadata.getTitle());
+        writeString(out, DIRECTOR, metadata.getDirector());
+        writeString(out, GENRES, metadata.getGenres());
+        writeString(out, ACTOR_1, metadata.getActor1());
+        writeString(out, ACTOR_2, metadata.getActor2());
+        writeString(out, ACTOR_3, metadata.getActor3());
+        writeString(out, PLOT_KEYWORDS, metadata.getPlotKeywords());
+        writeString(out, LANGUAGE, metadata.getLanguage());
+        writeString(out, COUNTRY, metadata.getCountry());
+        out.name(IMDB_SCORE).value(metadata.getImdbScore());
+        out.endObject();
+    }
+
+    @Override
+    public MovieMetadata read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        MovieMetadata metadata = new MovieMetadata();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                // Missing values keep their defaults, same as the reflective binding.
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case MOVIE_ID:
+                    metadata.setMovieId(in.nextLong());
+                    break;
+                case TITLE:
+                    metadata.setTitle(in.nextString());
+                    break;
+                case DIRECTOR:
+                    metadata.setDirector(in.nextString());
+                    break;
+                case GENRES:
+                    metadata.setGenres(in.nextString());
+                    break;
+                case ACTOR_1:
+                    metadata.setActor1(in.nextString());
+                    break;
+                case ACTOR_2:
+                    metadata.setActor2(in.nextString());
+                    break;
+                case ACTOR_3:
+                    metadata.setActor3(in.nextString());
+                    break;
+                case PLOT_KEYWORDS:
+                    metadata.setPlotKeywords(in.nextString());
+                    break;
+                case LANGUAGE:
+                    metadata.setLanguage(in.nextString());
+                    break;
+                case COUNTRY:
+                    metadata.setCountry(in.nextString());
+                    break;
+                case IMDB_SCORE:
+                    metadata.setImdbScore(in.nextDouble());
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return metadata;
+    }
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package pl.edu.agh.movierecommender;
+
+import android.app.ActivityManager;
+import android.app.Application;
+import android.graphics.Bitmap;
+import android.util.DisplayMetrics;
+
+import com.nostra13.universalimageloader.cache.disc.naming.HashCodeFileNameGenerator;
+import com.nostra13.universalimageloader.cache.memory.impl.LruMemoryCache;
+import com.nostra13.universalimageloader.core.DisplayImageOptions;
+import com.nostra13.universalimageloader.core.ImageLoader;
+import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
+import com.nostra13.universalimageloader.core.assist.ImageScaleType;
+import com.nostra13.universalimageloader.core.assist.QueueProcessingType;
+import com.nostra13.universalimageloader.core.display.FadeInBitmapDisplayer;
+
+/**
+ * Sets up the process-wide image pipeline and favourites outbox before any screen is shown.
+ *
+ * Posters are decoded downsampled to the size of the card's ImageView, in RGB_565, and kept in
+ * an LRU memory cache sized from the app's memory class, so a card scrolled back into view
+ * shows the same bitmap instead of decoding it again. Downloaded posters go to a bounded disk
+ * cache. The most recently requested posters are loaded first, i.e. the rows in view while
+ * scrolling.
+ */
+public class MovieRecommenderApplication extends Application {
+
+    /**
+     * How cards show their poster; cached bitmaps are shown at once, without fading in again.
+     */
+    static final DisplayImageOptions POSTER_OPTIONS = new DisplayImageOptions.Builder()
+            .cacheInMemory(true)
+            .cacheOnDisk(true)
+            .resetViewBeforeLoading(true)
+            .showImageForEmptyUri(R.drawable.image_failed)
+            .showImageOnFail(R.drawable.image_failed)
+            .showImageOnLoading(R.drawable.image_failed)
+            .imageScaleType(ImageScaleType.EXACTLY)
+            .bitmapConfig(Bitmap.Config.RGB_565)
+            .displayer(new FadeInBitmapDisplayer(300, true, true, false))
+            .build();
+
+    private static final int MEMORY_CACHE_SHARE = 8;
+    private static final int DISK_CACHE_BYTES = 50 * 1024 * 1024;
+    // Posters are 2:3, and a card's poster is never wider than a third of the screen.
+    private static final int CARD_COLUMNS = 3;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+        int memoryCacheBytes = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_SHARE;
+        // Bounds the decoded size while a card's ImageView is not measured yet.
+        DisplayMetrics display = getResources().getDisplayMetrics();
+        int posterWidth = Math.min(display.widthPixels, display.heightPixels) / CARD_COLUMNS;
+        int posterHeight = posterWidth * 3 / 2;
+
+        ImageLoaderConfiguration config = new ImageLoaderConfiguration.Builder(this)
+                .defaultDisplayImageOptions(POSTER_OPTIONS)
+                .memoryCache(new LruMemoryCache(memoryCacheBytes))
+                .memoryCacheExtraOptions(posterWidth, posterHeight)
+                // One bitmap per poster, whatever the size of the views showing it.
+                .denyCacheImageMultipleSizesInMemory()
+                .diskCacheSize(DISK_CACHE_BYTES)
+                .diskCacheFileNameGenerator(new HashCodeFileNameGenerator())
+                .tasksProcessingOrder(QueueProcessingType.LIFO)
+                .threadPriority(Thread.NORM_PRIORITY - 2)
+                .build();
+        ImageLoader.getInstance().init(config);
+
+        // Submits the favourites left over from previous sessions.
+        FavouritesOutbox.getInstance(this);
+    }
+}
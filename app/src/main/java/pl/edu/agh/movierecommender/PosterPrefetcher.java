@@ -0,0 +1,119 @@
+package pl.edu.agh.movierecommender;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import com.nostra13.universalimageloader.core.ImageLoader;
+import com.nostra13.universalimageloader.core.assist.ImageSize;
+
+/**
+ * Loads the posters of the next rows in the scroll direction into the memory cache, so they
+ * are decoded before their cards scroll into view.
+ *
+ * Posters are decoded at the size of the cards' ImageViews, which is also what the cards ask
+ * for, so a prefetched poster is a memory cache hit. Each row is requested once per scroll
+ * direction; the image loader serves rows in view first.
+ */
+class PosterPrefetcher extends RecyclerView.OnScrollListener {
+
+    /**
+     * The cards of a list's adapter.
+     */
+    interface Cards {
+        int getItemCount();
+
+        MovieCard cardAt(int position);
+    }
+
+    static final int PREFETCH_ROWS = 6;
+
+    /**
+     * Forgets the requested rows when the adapter's cards change, to be registered with it once,
+     * when the adapter is created.
+     */
+    final RecyclerView.AdapterDataObserver dataObserver = new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            forgetRequested();
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            forgetRequested();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            forgetRequested();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            forgetRequested();
+        }
+    };
+
+    private final Cards cards;
+
+    // Rows already requested, as [from, to).
+    private int requestedFrom;
+    private int requestedTo;
+
+    PosterPrefetcher(Cards cards) {
+        this.cards = cards;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView list, int dx, int dy) {
+        if (dy == 0 || !(list.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        ImageSize posterSize = posterSize(list);
+        if (posterSize == null) {
+            return;
+        }
+        LinearLayoutManager layout = (LinearLayoutManager) list.getLayoutManager();
+        int count = cards.getItemCount();
+        if (dy > 0) {
+            int from = layout.findLastVisibleItemPosition() + 1;
+            prefetch(from, Math.min(from + PREFETCH_ROWS, count), posterSize);
+        } else {
+            int to = layout.findFirstVisibleItemPosition();
+            prefetch(Math.max(to - PREFETCH_ROWS, 0), to, posterSize);
+        }
+    }
+
+    private void prefetch(int from, int to, ImageSize posterSize) {
+        if (from < 0 || from >= to) {
+            return;
+        }
+        for (int position = from; position < to; position++) {
+            if (position < requestedFrom || position >= requestedTo) {
+                ImageLoader.getInstance().loadImage(cards.cardAt(position).getImgUrl(), posterSize,
+                        MovieRecommenderApplication.POSTER_OPTIONS, null);
+            }
+        }
+        requestedFrom = from;
+        requestedTo = to;
+    }
+
+    private void forgetRequested() {
+        requestedFrom = 0;
+        requestedTo = 0;
+    }
+
+    /**
+     * The size of a laid out card's poster, or null if there is none yet.
+     */
+    private static ImageSize posterSize(RecyclerView list) {
+        for (int i = 0; i < list.getChildCount(); i++) {
+            View image = list.getChildAt(i).findViewById(R.id.imageViewCard);
+            if (image != null && image.getWidth() > 0 && image.getHeight() > 0) {
+                return new ImageSize(image.getWidth(), image.getHeight());
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,73 @@
+package pl.edu.agh.movierecommender;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Maps a movie to the url of its poster: the poster bundled in the app's assets if there is
+ * one, else the one served by the recommender server.
+ *
+ * The bundled posters are listed in {@code posters/index}, written by the build with the
+ * posters: the number of movies, then their ids in ascending order. It is read once per
+ * process, after which a lookup is a binary search.
+ */
+class PosterResolver {
+
+    static final String INDEX_ASSET = "posters/index";
+    private static final String ASSET_URL_PREFIX = "assets://posters/";
+    private static final String SERVER_URL_PREFIX = MainActivity.SERVER_ADDRESS + "/posters/";
+    // IMDb ids, which the movie ids are, have at least 7 digits.
+    private static final int IMDB_ID_DIGITS = 7;
+
+    private static PosterResolver instance;
+
+    private final long[] bundled;
+
+    private PosterResolver(long[] bundled) {
+        this.bundled = bundled;
+    }
+
+    static synchronized PosterResolver getInstance(Context context) {
+        if (instance == null) {
+            instance = new PosterResolver(readIndex(context));
+        }
+        return instance;
+    }
+
+    String url(long movieId) {
+        String prefix = Arrays.binarySearch(bundled, movieId) >= 0 ? ASSET_URL_PREFIX : SERVER_URL_PREFIX;
+        return prefix + fileName(movieId);
+    }
+
+    /**
+     * The name of the movie's poster file, e.g. tt0133093.jpg, both in the assets and on the
+     * server.
+     */
+    static String fileName(long movieId) {
+        String digits = Long.toString(movieId);
+        StringBuilder name = new StringBuilder(2 + IMDB_ID_DIGITS + 4).append("tt");
+        for (int i = digits.length(); i < IMDB_ID_DIGITS; i++) {
+            name.append('0');
+        }
+        return name.append(digits).append(".jpg").toString();
+    }
+
+    private static long[] readIndex(Context context) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(context.getAssets().open(INDEX_ASSET)))) {
+            long[] movieIds = new long[in.readInt()];
+            for (int i = 0; i < movieIds.length; i++) {
+                movieIds[i] = in.readLong();
+            }
+            return movieIds;
+        } catch (IOException e) {
+            // No bundled posters, every poster comes from the server.
+            e.printStackTrace();
+            return new long[0];
+        }
+    }
+}
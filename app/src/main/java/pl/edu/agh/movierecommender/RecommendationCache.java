@@ -0,0 +1,193 @@
+package pl.edu.agh.movierecommender;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk cache of GET / responses, keyed by the username and the context tuple.
+ *
+ * Each entry keeps the raw response body together with the server's ETag and the time it was
+ * stored, so stale entries can still be shown at once and then revalidated with If-None-Match.
+ */
+class RecommendationCache {
+
+    static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final String DIRECTORY_NAME = "recommendations";
+    // 2: bodies carry the cursors of the next pages.
+    private static final int FORMAT_VERSION = 2;
+    private static final int BUFFER_SIZE = 8192;
+
+    private static RecommendationCache instance;
+
+    private final File directory;
+
+    private RecommendationCache(File directory) {
+        this.directory = directory;
+    }
+
+    static synchronized RecommendationCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new RecommendationCache(new File(context.getCacheDir(), DIRECTORY_NAME));
+        }
+        return instance;
+    }
+
+    static String key(String username, String timeOfWeek, String location, String companion) {
+        return userPrefix(username) + timeOfWeek + "_" + location + "_" + companion;
+    }
+
+    /**
+     * Returns the cached entry for the key, or null if there is none or it cannot be read.
+     */
+    synchronized Entry get(String key) {
+        File file = new File(directory, key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                file.delete();
+                return null;
+            }
+            String etag = in.readUTF();
+            long storedAt = in.readLong();
+            return new Entry(file, etag.isEmpty() ? null : etag, storedAt);
+        } catch (IOException e) {
+            e.printStackTrace();
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Streams the response body to disk, replacing any previous entry for the key.
+     */
+    synchronized Entry put(String key, String etag, InputStream body) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + directory);
+        }
+        long storedAt = System.currentTimeMillis();
+        File tmp = new File(directory, key + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(etag == null ? "" : etag);
+            out.writeLong(storedAt);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        File file = new File(directory, key);
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot move cache entry to " + file);
+        }
+        return new Entry(file, etag, storedAt);
+    }
+
+    /**
+     * Marks the entry as fresh again, e.g. after the server answered 304 Not Modified.
+     */
+    synchronized void touch(String key) {
+        File file = new File(directory, key);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.readInt();
+            raf.readUTF();
+            raf.writeLong(System.currentTimeMillis());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    synchronized void remove(String key) {
+        new File(directory, key).delete();
+    }
+
+    /**
+     * Drops every entry of the user, e.g. after their favourites changed.
+     */
+    synchronized void invalidate(String username) {
+        String prefix = userPrefix(username);
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private static String userPrefix(String username) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(username.getBytes(StandardCharsets.UTF_8));
+            StringBuilder prefix = new StringBuilder(hash.length * 2 + 1);
+            for (byte b : hash) {
+                prefix.append(String.format("%02x", b));
+            }
+            return prefix.append('_').toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available on Android.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static class Entry {
+        private final File file;
+        private final String etag;
+        private final long storedAt;
+
+        Entry(File file, String etag, long storedAt) {
+            this.file = file;
+            this.etag = etag;
+            this.storedAt = storedAt;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() - storedAt < TTL_MILLIS;
+        }
+
+        /**
+         * Opens the cached response body, positioned after the entry header.
+         */
+        Reader openBody() throws IOException {
+            InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+            try {
+                DataInputStream header = new DataInputStream(in);
+                header.readInt();
+                header.readUTF();
+                header.readLong();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            return new InputStreamReader(in, StandardCharsets.UTF_8);
+        }
+    }
+}
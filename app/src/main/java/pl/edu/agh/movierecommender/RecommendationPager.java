@@ -0,0 +1,155 @@
+package pl.edu.agh.movierecommender;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+
+/**
+ * Loads the next pages of a recommendation list as the user scrolls towards its end.
+ *
+ * The list starts with the first page of GET /, possibly from the cache, and keeps the server's
+ * cursor of the page after it. Once the last visible row is close to the end, that page is
+ * fetched with GET /more, decoded on OkHttp's thread and appended. Every page is a slice of the
+ * same ranking, so pages never overlap. One page is in flight at a time, and showing a new first
+ * page drops it.
+ */
+class RecommendationPager extends RecyclerView.OnScrollListener {
+
+    static final int LOAD_AHEAD_ROWS = 5;
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    private final MovieListAdapter adapter;
+    private final MovieCardDecoder decoder;
+    private final String username;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Only used on the UI thread.
+    private String next;
+    private Call pending;
+    private int generation;
+    private long failedAt = -RETRY_DELAY_MILLIS;
+
+    RecommendationPager(MovieListAdapter adapter, MovieCardDecoder decoder, String username) {
+        this.adapter = adapter;
+        this.decoder = decoder;
+        this.username = username;
+    }
+
+    /**
+     * Shows the pages in the list, which may be a new one, e.g. after its fragment was recreated.
+     */
+    void attachTo(RecyclerView list) {
+        adapter.attachTo(list);
+        list.removeOnScrollListener(this);
+        list.addOnScrollListener(this);
+    }
+
+    /**
+     * Replaces the list with its first page, e.g. for a new context.
+     */
+    void show(MovieCardPage firstPage) {
+        cancel();
+        next = firstPage.getNext();
+        adapter.submitList(firstPage.getCards());
+    }
+
+    /**
+     * Drops the page in flight; it is requested again when the user scrolls.
+     */
+    void cancel() {
+        generation++;
+        if (pending != null) {
+            pending.cancel();
+            pending = null;
+        }
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView list, int dx, int dy) {
+        if (dy <= 0 || next == null || pending != null
+                || SystemClock.uptimeMillis() - failedAt < RETRY_DELAY_MILLIS
+                || !(list.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        LinearLayoutManager layout = (LinearLayoutManager) list.getLayoutManager();
+        if (layout.findLastVisibleItemPosition() >= adapter.getItemCount() - LOAD_AHEAD_ROWS) {
+            loadNext();
+        }
+    }
+
+    private void loadNext() {
+        int requestGeneration = generation;
+        pending = RecommenderApiClient.getInstance().moreRecommendations(username, next);
+        pending.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                if (!call.isCanceled()) {
+                    e.printStackTrace();
+                }
+                mainHandler.post(() -> onPageLoaded(requestGeneration, null, false));
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                MovieCardPage page = null;
+                boolean gone = false;
+                try (Response r = response) {
+                    if (r.isSuccessful()) {
+                        try (Reader body = r.body().charStream()) {
+                            page = decoder.decodePage(body);
+                        }
+                    } else {
+                        gone = r.code() == HttpURLConnection.HTTP_GONE;
+                    }
+                } catch (IOException | JsonParseException | IllegalStateException e) {
+                    e.printStackTrace();
+                }
+                MovieCardPage loaded = page;
+                boolean listGone = gone;
+                mainHandler.post(() -> onPageLoaded(requestGeneration, loaded, listGone));
+            }
+        });
+    }
+
+    /**
+     * @param page the page, or null if it could not be loaded
+     * @param gone whether the server no longer has the list, i.e. the favourites changed
+     */
+    private void onPageLoaded(int requestGeneration, MovieCardPage page, boolean gone) {
+        if (requestGeneration != generation) {
+            return;
+        }
+        pending = null;
+        if (page == null) {
+            if (gone) {
+                // Recommend shows the new recommendations.
+                next = null;
+            } else {
+                failedAt = SystemClock.uptimeMillis();
+            }
+            return;
+        }
+
+        next = page.getNext();
+        List<MovieCard> current = adapter.getCurrentList();
+        List<MovieCard> cards = new ArrayList<>(current.size() + page.getCards().size());
+        cards.addAll(current);
+        cards.addAll(page.getCards());
+        adapter.submitList(cards);
+    }
+}
@@ -0,0 +1,110 @@
+package pl.edu.agh.movierecommender;
+
+import android.os.Process;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Response;
+
+/**
+ * Warms the {@link RecommendationCache} for every location and companion of the current
+ * time of week, so a tap on Recommend can be served locally.
+ *
+ * Runs once on a background-priority thread, requests one context at a time and stops when its
+ * time budget is spent, or when it is cancelled.
+ */
+class RecommendationPrefetcher implements Runnable {
+
+    static final String[] LOCATIONS = {"Home", "Cinema"};
+    static final String[] COMPANIONS = {"Alone", "Partner", "Family"};
+
+    private static final long TIME_BUDGET_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final RecommendationCache cache;
+    private final String username;
+    private final String timeOfWeek;
+
+    private boolean cancelled;
+    private Call currentCall;
+
+    RecommendationPrefetcher(RecommendationCache cache, String username, String timeOfWeek) {
+        this.cache = cache;
+        this.username = username;
+        this.timeOfWeek = timeOfWeek;
+    }
+
+    void start() {
+        new Thread(this, "recommendation-prefetch").start();
+    }
+
+    /**
+     * Stops prefetching, e.g. when the app goes to the background.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+        if (currentCall != null) {
+            currentCall.cancel();
+        }
+    }
+
+    private synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        long deadline = System.currentTimeMillis() + TIME_BUDGET_MILLIS;
+        for (String location : LOCATIONS) {
+            for (String companion : COMPANIONS) {
+                if (isCancelled() || System.currentTimeMillis() > deadline) {
+                    return;
+                }
+                String key = RecommendationCache.key(username, timeOfWeek, location, companion);
+                RecommendationCache.Entry cached = cache.get(key);
+                if (cached != null && cached.isFresh()) {
+                    continue;
+                }
+                if (!prefetch(key, location, companion, cached)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if prefetching should stop, e.g. the user has no favourites yet
+     */
+    private boolean prefetch(String key, String location, String companion, RecommendationCache.Entry cached) {
+        Call call = RecommenderApiClient.getInstance()
+                .recommendations(username, timeOfWeek, location, companion,
+                        cached != null ? cached.getEtag() : null);
+        synchronized (this) {
+            if (cancelled) {
+                return false;
+            }
+            currentCall = call;
+        }
+
+        try (Response response = call.execute()) {
+            if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                cache.touch(key);
+            } else if (response.isSuccessful()) {
+                // Only stored, the cards are decoded when the user asks for them.
+                cache.put(key, response.header("ETag"), response.body().byteStream());
+            } else {
+                // Every other context would fail the same way.
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            if (!isCancelled()) {
+                e.printStackTrace();
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package pl.edu.agh.movierecommender;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import okhttp3.Call;
+
+/**
+ * Runs recommendation requests on a small bounded executor.
+ *
+ * Only the latest context is ever of interest: a request for the context already in flight
+ * is coalesced into it, and a request for a new context cancels the older one. Results are
+ * tagged with the generation of their request, so stale results can be dropped on delivery.
+ */
+class RecommendationRequestManager {
+
+    private static final int MAX_THREADS = 2;
+    private static final int MAX_QUEUED = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ExecutorService executor;
+    private PendingRequest current;
+    private int lastGeneration;
+
+    RecommendationRequestManager() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_QUEUED),
+                new RequestThreadFactory(),
+                // Queued requests are older than the new one, so they are obsolete anyway.
+                new ThreadPoolExecutor.DiscardOldestPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+    }
+
+    /**
+     * Submits the work for the given request key.
+     *
+     * @return false if an identical request is already in flight and the work was not submitted
+     */
+    synchronized boolean submit(String key, Consumer<PendingRequest> work) {
+        if (current != null && !current.isFinished() && current.key.equals(key)) {
+            return false;
+        }
+        if (current != null) {
+            current.cancel();
+        }
+        PendingRequest request = new PendingRequest(key, ++lastGeneration);
+        current = request;
+        request.setFuture(executor.submit(() -> {
+            try {
+                work.accept(request);
+            } finally {
+                request.finish();
+            }
+        }));
+        return true;
+    }
+
+    /**
+     * Whether results of the request with the given generation should still be shown.
+     */
+    synchronized boolean isCurrent(int generation) {
+        return current != null && current.generation == generation && !current.isCancelled();
+    }
+
+    /**
+     * Cancels the outstanding request, e.g. when the activity is stopped.
+     */
+    synchronized void cancelAll() {
+        if (current != null) {
+            current.cancel();
+            current = null;
+        }
+    }
+
+    void shutdown() {
+        cancelAll();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Handle of a submitted request, used by the work to register its HTTP call for cancellation.
+     */
+    static class PendingRequest {
+        private final String key;
+        private final int generation;
+        private boolean cancelled;
+        private boolean finished;
+        private Call call;
+        private Future<?> future;
+
+        PendingRequest(String key, int generation) {
+            this.key = key;
+            this.generation = generation;
+        }
+
+        int getGeneration() {
+            return generation;
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Registers the HTTP call of the request.
+         *
+         * @return false if the request was already cancelled, the call is then cancelled as well
+         */
+        synchronized boolean attach(Call call) {
+            this.call = call;
+            if (cancelled) {
+                call.cancel();
+                return false;
+            }
+            return true;
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (call != null) {
+                call.cancel();
+            }
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+
+        private synchronized void setFuture(Future<?> future) {
+            this.future = future;
+            if (cancelled) {
+                future.cancel(true);
+            }
+        }
+
+        private synchronized boolean isFinished() {
+            return finished;
+        }
+
+        private synchronized void finish() {
+            finished = true;
+        }
+    }
+
+    private static class RequestThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "recommendations-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
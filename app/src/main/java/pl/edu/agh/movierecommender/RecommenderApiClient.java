@@ -0,0 +1,157 @@
+package pl.edu.agh.movierecommender;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+/**
+ * Process-wide client for the recommender server API.
+ *
+ * All calls share a single {@link OkHttpClient}, so connections to the server are kept alive
+ * and reused between requests instead of paying the TCP handshake on every tap.
+ * Responses are transparently gzip-decoded by OkHttp, which adds the Accept-Encoding header.
+ */
+class RecommenderApiClient {
+
+    private static final String RECOMMENDATIONS_ENDPOINT = MainActivity.SERVER_ADDRESS + "/";
+    private static final String MORE_ENDPOINT = MainActivity.SERVER_ADDRESS + "/more";
+    private static final String FAVOURITES_ENDPOINT = MainActivity.SERVER_ADDRESS + "/favourites";
+    private static final String TITLES_ENDPOINT = MainActivity.SERVER_ADDRESS + "/titles";
+    private static final MediaType JSON_TYPE = MediaType.parse("application/json; charset=utf-8");
+
+    // The first page is what the user waits for, the next ones are loaded ahead of scrolling.
+    static final int FIRST_PAGE_SIZE = 10;
+    static final int PAGE_SIZE = 20;
+
+    // The server computes recommendations on every request, so reads get more slack than connects.
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long READ_TIMEOUT_SECONDS = 30;
+    private static final long WRITE_TIMEOUT_SECONDS = 15;
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static RecommenderApiClient instance;
+
+    private final OkHttpClient client;
+
+    private RecommenderApiClient() {
+        client = new OkHttpClient.Builder()
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+
+    static synchronized RecommenderApiClient getInstance() {
+        if (instance == null) {
+            instance = new RecommenderApiClient();
+        }
+        return instance;
+    }
+
+    /**
+     * Prepares a GET / call returning the first pages of the "collab" and "content"
+     * recommendations for the context, with the cursors of their next pages.
+     *
+     * @param etag ETag of a cached response to revalidate, or null; the server answers
+     *             304 Not Modified if it still holds
+     */
+    Call recommendations(String username, String timeOfWeek, String location, String companion,
+                         String etag) {
+        HttpUrl url = HttpUrl.parse(RECOMMENDATIONS_ENDPOINT).newBuilder()
+                .addQueryParameter("u", encodeValue(username))
+                .addQueryParameter("t", encodeValue(timeOfWeek))
+                .addQueryParameter("loc", encodeValue(location))
+                .addQueryParameter("comp", encodeValue(companion))
+                .addQueryParameter("n", Integer.toString(FIRST_PAGE_SIZE))
+                .build();
+        Request.Builder request = new Request.Builder()
+                .url(url);
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        return client.newCall(request.build());
+    }
+
+    /**
+     * Prepares a GET /more call returning the page of a recommendation list at the cursor, with
+     * the cursor of the page after it. The server answers 410 Gone if the recommendations have
+     * changed since the cursor was issued.
+     */
+    Call moreRecommendations(String username, String cursor) {
+        HttpUrl url = HttpUrl.parse(MORE_ENDPOINT).newBuilder()
+                .addQueryParameter("u", encodeValue(username))
+                // URL-safe already.
+                .addQueryParameter("cursor", cursor)
+                .addQueryParameter("n", Integer.toString(PAGE_SIZE))
+                .build();
+        Request request = new Request.Builder()
+                .url(url)
+                .build();
+        return client.newCall(request);
+    }
+
+    /**
+     * Prepares a GET /favourites call returning the metadata of the user's favourite movies.
+     */
+    Call favourites(String username) {
+        Request request = new Request.Builder()
+                .url(favouritesUrl(username))
+                .build();
+        return client.newCall(request);
+    }
+
+    /**
+     * Prepares a POST /favourites call adding the given titles to the user's favourites.
+     */
+    Call addFavourites(String username, List<String> titles) {
+        // Body needs to be a JSON list of titles
+        RequestBody body = RequestBody.create(MovieJson.GSON.toJson(titles), JSON_TYPE);
+        Request request = new Request.Builder()
+                .url(favouritesUrl(username))
+                .post(body)
+                .build();
+        return client.newCall(request);
+    }
+
+    /**
+     * Prepares a GET /titles call returning the JSON list of all titles known to the server.
+     *
+     * @param etag ETag of the stored titles to revalidate, or null
+     */
+    Call titles(String etag) {
+        Request.Builder request = new Request.Builder()
+                .url(TITLES_ENDPOINT);
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        return client.newCall(request.build());
+    }
+
+    private HttpUrl favouritesUrl(String username) {
+        return HttpUrl.parse(FAVOURITES_ENDPOINT).newBuilder()
+                .addQueryParameter("u", encodeValue(username))
+                .build();
+    }
+
+    private static String encodeValue(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.toString());
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+        }
+        return "";
+    }
+}
@@ -0,0 +1,152 @@
+package pl.edu.agh.movierecommender;
+
+import android.content.Context;
+import android.os.Process;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Response;
+
+import pl.edu.agh.movierecommender.core.TitleIndex;
+
+/**
+ * Process-wide {@link TitleIndex} of the server's titles, for suggestions as the user types.
+ *
+ * The titles from GET /titles are kept in a file with their ETag, so the index is built from
+ * the file at once on the next start, then revalidated with If-None-Match and rebuilt only if
+ * the titles changed. Loading and building run on a background thread; until then
+ * {@link #get()} returns null.
+ */
+class TitleIndexLoader implements Runnable {
+
+    private static final String FILE_NAME = "titles";
+    private static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 8192;
+
+    private static TitleIndexLoader instance;
+
+    private final File file;
+    private volatile TitleIndex index;
+    // ETag of the titles the index was built from, only used by the loading thread.
+    private String etag;
+    private boolean loading;
+
+    private TitleIndexLoader(File file) {
+        this.file = file;
+    }
+
+    static synchronized TitleIndexLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new TitleIndexLoader(new File(context.getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * The index, or null if it is not loaded yet.
+     */
+    TitleIndex get() {
+        return index;
+    }
+
+    /**
+     * Loads the index in the background, then checks the server for new titles; does nothing if
+     * that is already under way.
+     */
+    synchronized void load() {
+        if (loading) {
+            return;
+        }
+        loading = true;
+        new Thread(this, "title-index").start();
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        try {
+            if (index == null && file.isFile()) {
+                loadFile();
+            }
+            revalidate();
+        } finally {
+            synchronized (this) {
+                loading = false;
+            }
+        }
+    }
+
+    /**
+     * Builds the index from the stored titles.
+     */
+    private void loadFile() {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                file.delete();
+                return;
+            }
+            String storedEtag = in.readUTF();
+            index = new TitleIndex(readTitles(in));
+            etag = storedEtag.isEmpty() ? null : storedEtag;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            file.delete();
+        }
+    }
+
+    private void revalidate() {
+        Call call = RecommenderApiClient.getInstance().titles(etag);
+        try (Response response = call.execute()) {
+            if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED || !response.isSuccessful()) {
+                return;
+            }
+            List<String> titles = readTitles(response.body().byteStream());
+            index = new TitleIndex(titles);
+            etag = response.header("ETag");
+            store(etag, titles);
+        } catch (IOException | RuntimeException e) {
+            // Offline: keep suggesting from the stored titles, if any.
+            e.printStackTrace();
+        }
+    }
+
+    private void store(String newEtag, List<String> titles) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(newEtag == null ? "" : newEtag);
+            out.write(MovieJson.GSON.toJson(titles).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot move titles to " + file);
+        }
+    }
+
+    private static List<String> readTitles(InputStream in) throws IOException {
+        List<String> titles = MovieJson.GSON.fromJson(
+                new InputStreamReader(in, StandardCharsets.UTF_8), MovieJson.TITLE_LIST_TYPE);
+        if (titles == null) {
+            throw new IOException("Expected a JSON list of titles");
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,105 @@
+package pl.edu.agh.movierecommender;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MovieMetadataTypeAdapterTest {
+
+    // As sent by server.py, including the NaN it writes for a missing IMDb score.
+    private static final String PAYLOAD = "[" +
+            "{\"movie_id\": 109830, \"title\": \"Forrest Gump\", \"director\": \"Robert Zemeckis\"," +
+            " \"genres\": \"Comedy|Drama\", \"actor_1\": \"Tom Hanks\", \"actor_2\": \"Siobhan Fallon Hogan\"," +
+            " \"actor_3\": \"Sam Anderson\", \"plot_keywords\": \"amputee|love|vietnam\"," +
+            " \"language\": \"English\", \"country\": \"USA\", \"imdb_score\": 8.8}," +
+            "{\"movie_id\": 133093, \"title\": \"The Matrix\", \"director\": null, \"genres\": null," +
+            " \"imdb_score\": null}," +
+            "{\"movie_id\": 120338, \"title\": \"\", \"director\": \"\", \"country\": \"\", \"imdb_score\": NaN}," +
+            "{\"movie_id\": 88763, \"title\": \"Back to the Future\", \"poster\": {\"url\": \"tt0088763.jpg\"}," +
+            " \"tags\": [1, \"two\", null], \"rank\": 3, \"imdb_score\": 8.5}" +
+            "]";
+
+    private final Gson reflective = new Gson();
+
+    @Test
+    public void readsServerPayloadLikeReflectiveGson() {
+        List<MovieMetadata> expected = reflective.fromJson(PAYLOAD, MovieJson.METADATA_LIST_TYPE);
+        List<MovieMetadata> actual = MovieJson.GSON.fromJson(PAYLOAD, MovieJson.METADATA_LIST_TYPE);
+
+        assertMetadataEquals(expected, actual);
+    }
+
+    @Test
+    public void roundTripsThroughBothBindings() {
+        List<MovieMetadata> movies = MovieJson.GSON.fromJson(PAYLOAD, MovieJson.METADATA_LIST_TYPE);
+        Gson reflectiveNaN = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+
+        List<MovieMetadata> viaAdapter = MovieJson.GSON.fromJson(
+                MovieJson.GSON.toJson(movies, MovieJson.METADATA_LIST_TYPE), MovieJson.METADATA_LIST_TYPE);
+        List<MovieMetadata> viaReflection = reflective.fromJson(
+                reflectiveNaN.toJson(movies, MovieJson.METADATA_LIST_TYPE), MovieJson.METADATA_LIST_TYPE);
+        List<MovieMetadata> adapterToReflection = reflective.fromJson(
+                MovieJson.GSON.toJson(movies, MovieJson.METADATA_LIST_TYPE), MovieJson.METADATA_LIST_TYPE);
+
+        assertMetadataEquals(movies, viaAdapter);
+        assertMetadataEquals(movies, viaReflection);
+        assertMetadataEquals(movies, adapterToReflection);
+    }
+
+    @Test
+    public void keepsDefaultsOfNullAndMissingFields() {
+        MovieMetadata metadata = MovieJson.GSON.fromJson(
+                "{\"movie_id\": null, \"title\": null, \"unknown\": {\"movie_id\": 7}}", MovieMetadata.class);
+
+        assertEquals(0, metadata.getMovieId());
+        assertNull(metadata.getTitle());
+        assertNull(metadata.getDirector());
+        assertEquals(0, metadata.getImdbScore(), 0);
+    }
+
+    @Test
+    public void readsEmptyTextAndNaN() {
+        MovieMetadata metadata = MovieJson.GSON.fromJson(
+                "{\"movie_id\": 1, \"title\": \"\", \"genres\": \"\", \"imdb_score\": NaN}", MovieMetadata.class);
+
+        assertEquals("", metadata.getTitle());
+        assertEquals("", metadata.getGenres());
+        assertEquals(Double.NaN, metadata.getImdbScore(), 0);
+    }
+
+    @Test
+    public void readsNullMovie() {
+        List<MovieMetadata> movies = MovieJson.GSON.fromJson("[null]", MovieJson.METADATA_LIST_TYPE);
+
+        assertEquals(1, movies.size());
+        assertNull(movies.get(0));
+        assertEquals("null", MovieJson.GSON.toJson(null, MovieMetadata.class));
+    }
+
+    private static void assertMetadataEquals(List<MovieMetadata> expected, List<MovieMetadata> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            MovieMetadata e = expected.get(i);
+            MovieMetadata a = actual.get(i);
+            String movie = "movie " + i;
+            assertEquals(movie, e.getMovieId(), a.getMovieId());
+            assertEquals(movie, e.getTitle(), a.getTitle());
+            assertEquals(movie, e.getDirector(), a.getDirector());
+            assertEquals(movie, e.getGenres(), a.getGenres());
+            assertEquals(movie, e.getActor1(), a.getActor1());
+            assertEquals(movie, e.getActor2(), a.getActor2());
+            assertEquals(movie, e.getActor3(), a.getActor3());
+            assertEquals(movie, e.getPlotKeywords(), a.getPlotKeywords());
+            assertEquals(movie, e.getLanguage(), a.getLanguage());
+            assertEquals(movie, e.getCountry(), a.getCountry());
+            // assertEquals(double, double, delta) treats NaN as equal to NaN.
+            assertEquals(movie, e.getImdbScore(), a.getImdbScore(), 0);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package pl.edu.agh.movierecommender;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Building the {@link MovieCard} list of a response from already decoded metadata.
+ */
+@State(Scope.Benchmark)
+public class CardBuildingBenchmark {
+
+    // Stands in for R.drawable.tt0133093, which MainActivity.getImageUrl always returns.
+    private static final int POSTER_RESOURCE = 0x7f07005c;
+
+    @Param({"10", "1000", "100000"})
+    public int entries;
+
+    private List<MovieMetadata> metadata;
+
+    @Setup
+    public void setUp() {
+        metadata = Payloads.movies(entries, 1);
+    }
+
+    @Benchmark
+    public List<MovieCard> buildCards() {
+        return buildCards(metadata);
+    }
+
+    static List<MovieCard> buildCards(List<MovieMetadata> metadata) {
+        ArrayList<MovieCard> movieCards = new ArrayList<>();
+        metadata.forEach(m -> movieCards.add(new MovieCard(m, imageUrl(m.getMovieId()))));
+        return movieCards;
+    }
+
+    static String imageUrl(long movieId) {
+        return "drawable://" + POSTER_RESOURCE;
+    }
+}
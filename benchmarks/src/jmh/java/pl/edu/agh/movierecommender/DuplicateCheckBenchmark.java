@@ -0,0 +1,81 @@
+package pl.edu.agh.movierecommender;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The check of added favourites against the existing ones done by AddFavouritesHandler: the
+ * boxed list it used to build per message, and the {@link FavouritesModel} it now keeps.
+ */
+@State(Scope.Benchmark)
+public class DuplicateCheckBenchmark {
+
+    private static final int ADDED = 10;
+
+    @Param({"10", "1000", "100000"})
+    public int existing;
+
+    private List<MovieCard> favouritesCards;
+    private List<MovieCard> addedMovies;
+    private FavouritesModel favourites;
+
+    @Setup
+    public void setUp() {
+        favouritesCards = CardBuildingBenchmark.buildCards(Payloads.movies(existing, 3));
+        // Half of the added movies are already favourites.
+        addedMovies = new ArrayList<>(CardBuildingBenchmark.buildCards(Payloads.movies(ADDED / 2, 4)));
+        for (int i = 0; i < ADDED / 2; i++) {
+            addedMovies.add(favouritesCards.get(i * favouritesCards.size() / (ADDED / 2)));
+        }
+        favourites = new FavouritesModel(new FavouritesModel.Listener() {
+            @Override
+            public void onInserted(int position, int count) {
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+            }
+
+            @Override
+            public void onChanged(int position, int count) {
+            }
+        });
+        favourites.addAll(favouritesCards);
+    }
+
+    @Benchmark
+    public List<MovieCard> boxedListContains() {
+        List<MovieCard> newFavourites = new ArrayList<>();
+        List<Long> existingFavs = favouritesCards.stream()
+                .map(e -> e.getMetadata().getMovieId())
+                .collect(Collectors.toList());
+        for (MovieCard addedMovie : addedMovies) {
+            if (!existingFavs.contains(addedMovie.getMetadata().getMovieId())) {
+                newFavourites.add(addedMovie);
+            }
+        }
+        return newFavourites;
+    }
+
+    @Benchmark
+    public List<MovieCard> modelContains() {
+        List<MovieCard> newFavourites = new ArrayList<>();
+        for (MovieCard addedMovie : addedMovies) {
+            if (!favourites.contains(addedMovie.getMetadata().getMovieId())) {
+                newFavourites.add(addedMovie);
+            }
+        }
+        return newFavourites;
+    }
+}
@@ -0,0 +1,90 @@
+package pl.edu.agh.movierecommender;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoding of the GET /, GET /more and GET /favourites bodies, from raw bytes to what the UI consumes.
+ *
+ * The *Reflective benchmarks replay the original client path: the body read into a String,
+ * a new Gson with reflective binding per message, and cards built in a second pass.
+ */
+@State(Scope.Benchmark)
+public class PayloadDecodingBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int entries;
+
+    private byte[] recommendationsJson;
+    private byte[] pageJson;
+    private byte[] favouritesJson;
+    private MovieCardDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        recommendationsJson = Payloads.recommendationsJson(entries);
+        pageJson = Payloads.pageJson(entries);
+        favouritesJson = Payloads.favouritesJson(entries);
+        decoder = new MovieCardDecoder(CardBuildingBenchmark::imageUrl);
+    }
+
+    @Benchmark
+    public Map<String, MovieCardPage> recommendationsStreaming() throws IOException {
+        return decoder.decodeRecommendations(reader(recommendationsJson));
+    }
+
+    @Benchmark
+    public Map<String, List<MovieCard>> recommendationsReflective() {
+        String body = new String(recommendationsJson, StandardCharsets.UTF_8);
+        Map<String, List<MovieMetadata>> metadataMap = new Gson().fromJson(
+                body, new TypeToken<Map<String, List<MovieMetadata>>>() {}.getType());
+        Map<String, List<MovieCard>> cards = new HashMap<>();
+        for (Map.Entry<String, List<MovieMetadata>> entry : metadataMap.entrySet()) {
+            cards.put(entry.getKey(), CardBuildingBenchmark.buildCards(entry.getValue()));
+        }
+        return cards;
+    }
+
+    @Benchmark
+    public MovieCardPage pageStreaming() throws IOException {
+        return decoder.decodePage(reader(pageJson));
+    }
+
+    @Benchmark
+    public List<MovieCard> favouritesStreaming() throws IOException {
+        return decoder.decodeCards(reader(favouritesJson));
+    }
+
+    @Benchmark
+    public List<MovieMetadata> favouritesSharedGson() {
+        String body = new String(favouritesJson, StandardCharsets.UTF_8);
+        return MovieJson.GSON.fromJson(body, MovieJson.METADATA_LIST_TYPE);
+    }
+
+    @Benchmark
+    public List<MovieCard> favouritesReflective() {
+        String body = new String(favouritesJson, StandardCharsets.UTF_8);
+        List<MovieMetadata> metadata = new Gson().fromJson(
+                body, new TypeToken<List<MovieMetadata>>() {}.getType());
+        return CardBuildingBenchmark.buildCards(metadata);
+    }
+
+    private static Reader reader(byte[] body) {
+        return new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,125 @@
+package pl.edu.agh.movierecommender;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic payloads shaped like the server's responses.
+ */
+final class Payloads {
+
+    private static final String[] GENRES = {"Action", "Adventure", "Comedy", "Crime", "Drama", "Family",
+            "Fantasy", "Romance", "Sci-Fi", "Thriller"};
+    private static final String[] WORDS = {"future", "time travel", "love", "war hero", "prince", "uncle",
+            "bank", "gangster", "mask", "prison", "escape", "friendship", "heist", "space", "robot"};
+    private static final int TITLE_WORDS = 5000;
+    private static final String CONSONANTS = "bcdfghklmnprstvwz";
+    private static final String VOWELS = "aeiouy";
+
+    private Payloads() {
+    }
+
+    static List<MovieMetadata> movies(int count, long seed) {
+        Random random = new Random(seed);
+        List<MovieMetadata> movies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MovieMetadata metadata = new MovieMetadata();
+            metadata.setMovieId(100000 + random.nextInt(9000000));
+            metadata.setTitle("Movie Title " + i);
+            metadata.setDirector(name(random));
+            metadata.setGenres(join(random, GENRES, 1 + random.nextInt(4)));
+            metadata.setActor1(name(random));
+            metadata.setActor2(name(random));
+            metadata.setActor3(name(random));
+            metadata.setPlotKeywords(join(random, WORDS, 5));
+            metadata.setLanguage("English");
+            metadata.setCountry("USA");
+            metadata.setImdbScore(1 + random.nextInt(90) / 10.0);
+            movies.add(metadata);
+        }
+        return movies;
+    }
+
+    /**
+     * A GET / body with {@code count} entries in each of the "collab" and "content" lists.
+     */
+    static byte[] recommendationsJson(int count) {
+        Map<String, List<MovieMetadata>> recommendations = new LinkedHashMap<>();
+        recommendations.put(MovieCardDecoder.KEY_COLLAB, movies(count, 1));
+        recommendations.put(MovieCardDecoder.KEY_CONTENT, movies(count, 2));
+        return MovieJson.GSON.toJson(recommendations).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A GET /more body with {@code count} entries and the cursor of the next page.
+     */
+    static byte[] pageJson(int count) {
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put(MovieCardDecoder.KEY_MOVIES, movies(count, 4));
+        page.put(MovieCardDecoder.KEY_NEXT, "Y29sbGFifDIwfFdlZWtkYXl8Q2luZW1hfEFsb25lfCIwIg");
+        return MovieJson.GSON.toJson(page).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A GET /favourites body with {@code count} entries.
+     */
+    static byte[] favouritesJson(int count) {
+        return MovieJson.GSON.toJson(movies(count, 3)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * {@code count} titles of one to five words. Words are made of syllables and drawn from a
+     * few thousand with a skew towards the first ones, so that titles share words, prefixes and
+     * trigrams about as much as real titles do.
+     */
+    static List<String> titles(int count, long seed) {
+        Random random = new Random(seed);
+        String[] vocabulary = new String[TITLE_WORDS];
+        for (int w = 0; w < vocabulary.length; w++) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 1 + random.nextInt(3);
+            for (int y = 0; y < syllables; y++) {
+                word.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())))
+                        .append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+                if (random.nextBoolean()) {
+                    word.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())));
+                }
+            }
+            word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+            vocabulary[w] = word.toString();
+        }
+        List<String> titles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder title = new StringBuilder();
+            int words = 1 + random.nextInt(5);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    title.append(' ');
+                }
+                // Roughly Zipf-distributed: word ranks spread evenly on a log scale.
+                title.append(vocabulary[(int) Math.pow(vocabulary.length, random.nextDouble()) - 1]);
+            }
+            titles.add(title.toString());
+        }
+        return titles;
+    }
+
+    private static String name(Random random) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String join(Random random, String[] values, int count) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                joined.append('|');
+            }
+            joined.append(values[random.nextInt(values.length)]);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package pl.edu.agh.movierecommender;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import pl.edu.agh.movierecommender.core.TitleIndex;
+
+/**
+ * The suggestions FavouritesActivity looks up as the user types, and building the index when
+ * the titles arrive. One typeTitle op is every keystroke of one title, so a keystroke takes
+ * 1 / (ops/s * keystrokes) on average.
+ */
+@State(Scope.Benchmark)
+public class TitleIndexBenchmark {
+
+    private static final int SUGGESTIONS = 8;
+    private static final int TYPED = 64;
+
+    @Param({"1000", "10000", "100000"})
+    public int titles;
+
+    private List<String> titleList;
+    private TitleIndex index;
+    // Every prefix of a few titles, half of them with a typo.
+    private List<String> keystrokes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        titleList = Payloads.titles(titles, 5);
+        index = new TitleIndex(titleList);
+        Random random = new Random(6);
+        keystrokes = new ArrayList<>();
+        for (int i = 0; i < TYPED; i++) {
+            StringBuilder typed = new StringBuilder(titleList.get(random.nextInt(titles)));
+            if (i % 2 == 1 && typed.length() > 3) {
+                typed.setCharAt(1 + random.nextInt(typed.length() - 2), 'x');
+            }
+            for (int length = 1; length <= typed.length(); length++) {
+                keystrokes.add(typed.substring(0, length));
+            }
+        }
+    }
+
+    @Benchmark
+    public void typeTitle(Blackhole blackhole) {
+        // Keystrokes are walked in order, so each op types about one title.
+        int average = keystrokes.size() / TYPED;
+        for (int i = 0; i < average; i++) {
+            blackhole.consume(index.suggest(keystrokes.get(next), SUGGESTIONS));
+            next = (next + 1) % keystrokes.size();
+        }
+    }
+
+    @Benchmark
+    public TitleIndex buildIndex() {
+        return new TitleIndex(titleList);
+    }
+}
@@ -0,0 +1,47 @@
+package pl.edu.agh.movierecommender.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * The top-10 neighbours of a movie by brute force, the cosine similarity to every row, as the
+ * content recommender computes them without an index. Same vectors and queries as
+ * HnswSearchBenchmark.
+ */
+@State(Scope.Benchmark)
+public class BruteForceSearchBenchmark {
+
+    private static final int K = 10;
+    private static final int QUERIES = 1024;
+
+    @Param({"5000", "50000"})
+    public int movies;
+
+    private CosineSimilarity cosine;
+    private double[] similarities;
+    private int[] queries;
+    private int[] rows;
+    private double[] scores;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        cosine = new CosineSimilarity(Synthetic.contentVectors(movies, 7));
+        similarities = new double[movies];
+        queries = new Random(11).ints(QUERIES, 0, movies).toArray();
+        rows = new int[K];
+        scores = new double[K];
+    }
+
+    @Benchmark
+    public int bruteForce() {
+        int query = queries[next++ & (QUERIES - 1)];
+        cosine.similarities(query, similarities);
+        return TopN.select(similarities, movies, K, query, rows, scores, 0);
+    }
+}
@@ -0,0 +1,48 @@
+package pl.edu.agh.movierecommender.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * The top-10 neighbours of a movie from an {@link HnswIndex} exploring efSearch nodes, to
+ * compare with BruteForceSearchBenchmark. Recall against brute force is checked by
+ * HnswIndexTest; building the 50000-row index takes a while, so it is done once per trial.
+ */
+@State(Scope.Benchmark)
+public class HnswSearchBenchmark {
+
+    private static final int K = 10;
+    private static final int QUERIES = 1024;
+
+    @Param({"5000", "50000"})
+    public int movies;
+
+    @Param({"10", "50", "200"})
+    public int efSearch;
+
+    private HnswIndex index;
+    private int[] queries;
+    private int[] rows;
+    private double[] scores;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SparseMatrix matrix = Synthetic.contentVectors(movies, 7);
+        index = HnswIndex.build(matrix, HnswIndex.Parameters.DEFAULT);
+        queries = new Random(11).ints(QUERIES, 0, movies).toArray();
+        rows = new int[K];
+        scores = new double[K];
+    }
+
+    @Benchmark
+    public int hnsw() {
+        int query = queries[next++ & (QUERIES - 1)];
+        return index.nearest(query, K, query, efSearch, rows, scores, 0);
+    }
+}
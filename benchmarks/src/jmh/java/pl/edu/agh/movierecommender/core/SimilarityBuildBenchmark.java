@@ -0,0 +1,42 @@
+package pl.edu.agh.movierecommender.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Building the {@link SimilarityIndex} of 100000 ratings in fork-join pools of 1 to 8
+ * threads: the speedup is the ops/s of a pool over those of a single thread. The builds give
+ * the same tables whatever the pool, checked by SimilarityIndexTest.
+ */
+@State(Scope.Benchmark)
+public class SimilarityBuildBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private List<Rating> ratings;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        ratings = Synthetic.ratings(5000, 20000, 100000, 7);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public SimilarityIndex build() {
+        return SimilarityIndex.build(ratings, SimilarityIndex.DEFAULT_K, null, pool);
+    }
+}
@@ -0,0 +1,82 @@
+package pl.edu.agh.movierecommender.server;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable additions to a {@link UserFavouritesStore} by 64 concurrent writers, each op
+ * returning once its addition is synced. The syncs/s of the log are reported next to the ops/s,
+ * the writes per sync the writers shared being their ratio. Recovery is checked by
+ * UserFavouritesStoreTest.
+ */
+@State(Scope.Benchmark)
+@Threads(64)
+public class FavouritesStoreBenchmark {
+
+    @Param({"10000"})
+    public int users;
+
+    private Path directory;
+    private UserFavouritesStore store;
+    // Syncs already counted by one of the writers.
+    private final AtomicLong countedCommits = new AtomicLong();
+
+    @State(Scope.Thread)
+    public static class Writer {
+        final Random random = new Random(Thread.currentThread().getId());
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Syncs {
+        public long syncs;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            syncs = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("favourites");
+        store = UserFavouritesStore.open(directory);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.toFile().delete();
+    }
+
+    @Benchmark
+    public void addFavourite(Writer writer, Syncs syncs) throws IOException {
+        store.addFavourites("user" + writer.random.nextInt(users), new long[]{writer.random.nextInt(100000)});
+        // Every sync is claimed by the one writer that moves the counted mark past it.
+        long commits = store.commits();
+        long counted = countedCommits.get();
+        if (commits > counted && countedCommits.compareAndSet(counted, commits)) {
+            syncs.syncs += commits - counted;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity min-heap keeping the best scored items offered, so that the top n of many
+ * candidates are found without sorting them all. Equal scores favour lower items.
+ * The heap is reused through {@link #reset(int)} and only allocates when its capacity grows.
+ */
+final class BoundedMinHeap {
+
+    private int[] items;
+    private double[] scores;
+    private int capacity;
+    private int size;
+
+    BoundedMinHeap(int capacity) {
+        items = new int[capacity];
+        scores = new double[capacity];
+        this.capacity = capacity;
+    }
+
+    void reset(int capacity) {
+        if (capacity > items.length) {
+            items = Arrays.copyOf(items, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+        }
+        this.capacity = capacity;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void offer(int item, double score) {
+        if (size < capacity) {
+            items[size] = item;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (capacity > 0 && worse(items[0], scores[0], item, score)) {
+            items[0] = item;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Empties the heap into the arrays, best first.
+     *
+     * @return the number of items written
+     */
+    int drain(int[] outItems, double[] outScores) {
+        int count = size;
+        while (size > 0) {
+            outItems[size - 1] = items[0];
+            outScores[size - 1] = scores[0];
+            size--;
+            items[0] = items[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return count;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!worse(items[i], scores[i], items[parent], scores[parent])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && worse(items[child + 1], scores[child + 1], items[child], scores[child])) {
+                child++;
+            }
+            if (!worse(items[child], scores[child], items[i], scores[i])) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int item = items[a];
+        items[a] = items[b];
+        items[b] = item;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+
+    private static boolean worse(int item, double score, int otherItem, double otherScore) {
+        return score < otherScore || (score == otherScore && item > otherItem);
+    }
+}
@@ -0,0 +1,94 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Hashed bag-of-words features of movie metadata.
+ *
+ * The bag of words is built like ContentBasedRecommender.preprocess_data does (names joined
+ * into single tokens, list fields split on '|') and tokenised like scikit-learn's
+ * CountVectorizer. Tokens are hashed into {@link #DIMENSIONS} columns instead of a vocabulary,
+ * so no dictionary has to be built or kept.
+ */
+final class ContentFeatures {
+
+    static final int DIMENSIONS = 1 << 18;
+
+    // CountVectorizer's default token_pattern, (?u)\b\w\w+\b
+    private static final Pattern TOKEN = Pattern.compile("\\b\\w\\w+\\b", Pattern.UNICODE_CHARACTER_CLASS);
+
+    private ContentFeatures() {
+    }
+
+    /**
+     * Token counts of every movie, one catalogue row per movie.
+     */
+    static SparseMatrix vectorize(List<MovieMetadata> movies) {
+        int[] rowPointers = new int[movies.size() + 1];
+        int[] columns = new int[64];
+        double[] values = new double[64];
+        int size = 0;
+        for (int row = 0; row < movies.size(); row++) {
+            int[] features = features(movies.get(row));
+            Arrays.sort(features);
+            for (int i = 0; i < features.length; i++) {
+                if (i > 0 && features[i] == features[i - 1]) {
+                    values[size - 1]++;
+                    continue;
+                }
+                if (size == columns.length) {
+                    columns = Arrays.copyOf(columns, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                columns[size] = features[i];
+                values[size] = 1;
+                size++;
+            }
+            rowPointers[row + 1] = size;
+        }
+        return new SparseMatrix(movies.size(), DIMENSIONS, rowPointers,
+                Arrays.copyOf(columns, size), Arrays.copyOf(values, size));
+    }
+
+    static String bagOfWords(MovieMetadata movie) {
+        StringBuilder words = new StringBuilder();
+        for (String name : new String[]{movie.getDirector(), movie.getActor1(), movie.getActor2(), movie.getActor3()}) {
+            words.append(lower(name).replace(" ", "")).append(' ');
+        }
+        words.append(lower(movie.getCountry())).append(' ');
+        words.append(lower(movie.getGenres()).replace('|', ' ')).append(' ');
+        words.append(lower(movie.getLanguage()).replace('|', ' ')).append(' ');
+        words.append(lower(movie.getPlotKeywords()).replace(" ", "").replace('|', ' ')).append(' ');
+        return words.toString();
+    }
+
+    private static int[] features(MovieMetadata movie) {
+        Matcher matcher = TOKEN.matcher(bagOfWords(movie));
+        int[] features = new int[16];
+        int size = 0;
+        while (matcher.find()) {
+            if (size == features.length) {
+                features = Arrays.copyOf(features, size * 2);
+            }
+            features[size++] = featureIndex(matcher.group());
+        }
+        return Arrays.copyOf(features, size);
+    }
+
+    static int featureIndex(String token) {
+        int hash = token.hashCode();
+        // Spread the bits of String.hashCode, which clusters for short similar tokens.
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash & (DIMENSIONS - 1);
+    }
+
+    private static String lower(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+}
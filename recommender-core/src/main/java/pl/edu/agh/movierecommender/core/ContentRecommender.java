@@ -0,0 +1,330 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Content-based recommendations over movie metadata, the Java counterpart of
+ * ContentBasedRecommender in recommender/movie_recommenders.py.
+ *
+ * Every movie is tokenised once into a hashed feature vector and its most similar movies are
+ * precomputed, so a query only merges the precomputed lists of the favourites. As in Python,
+ * only movies rated in a matching context are recommended, each favourite contributes its n
+ * best such neighbours and a movie found for several favourites keeps its best similarity.
+ * The best candidates are selected with a bounded heap rather than sorted. Pages are cut from
+ * the ranking of every favourite's whole precomputed list, the same for every offset.
+ *
+ * The lists are either computed from the catalogue or read in place from a {@link MappedModel}.
+ */
+public class ContentRecommender {
+
+    public static final int DEFAULT_NEIGHBOURS = 50;
+
+    private final MovieCatalog catalog;
+    private final int neighbours;
+    private final IntBuffer neighbourRows;
+    private final DoubleBuffer neighbourScores;
+    private final IntBuffer neighbourCounts;
+    // Per context, 1 for the movies rated in a matching context.
+    private final ByteBuffer[] contextMovies;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public ContentRecommender(MovieCatalog catalog, List<Rating> ratings) {
+        this(catalog, ratings, DEFAULT_NEIGHBOURS);
+    }
+
+    /**
+     * @param neighbours length of the precomputed list of every movie, the largest n a query
+     *                   can be fully answered for
+     */
+    public ContentRecommender(MovieCatalog catalog, List<Rating> ratings, int neighbours) {
+        this(catalog, ratings, neighbours, null);
+    }
+
+    /**
+     * @param parameters parameters of the {@link HnswIndex} searching the neighbours of every
+     *                   movie, or null to compare every pair of movies
+     */
+    public ContentRecommender(MovieCatalog catalog, List<Rating> ratings, int neighbours,
+                              HnswIndex.Parameters parameters) {
+        this.catalog = catalog;
+        this.neighbours = neighbours;
+        int movies = catalog.size();
+        int[] neighbourRows = new int[movies * neighbours];
+        double[] neighbourScores = new double[movies * neighbours];
+        int[] neighbourCounts = new int[movies];
+
+        SparseMatrix features = ContentFeatures.vectorize(catalog.movies());
+        if (parameters != null) {
+            HnswIndex hnsw = HnswIndex.build(features, parameters);
+            for (int row = 0; row < movies; row++) {
+                neighbourCounts[row] = hnsw.nearest(row, neighbours, row,
+                        neighbourRows, neighbourScores, row * neighbours);
+            }
+        } else {
+            CosineSimilarity cosine = new CosineSimilarity(features);
+            double[] similarities = new double[movies];
+            for (int row = 0; row < movies; row++) {
+                cosine.similarities(row, similarities);
+                neighbourCounts[row] = TopN.select(similarities, movies, neighbours, row,
+                        neighbourRows, neighbourScores, row * neighbours);
+            }
+        }
+        this.neighbourRows = IntBuffer.wrap(neighbourRows);
+        this.neighbourScores = DoubleBuffer.wrap(neighbourScores);
+        this.neighbourCounts = IntBuffer.wrap(neighbourCounts);
+
+        byte[][] contextMovies = new byte[Context.COUNT][movies];
+        for (Rating rating : ratings) {
+            int row = catalog.rowOf(rating.getMovieId());
+            if (row < 0) {
+                continue;
+            }
+            for (Context context : Context.all()) {
+                if (context.matches(rating.getContext())) {
+                    contextMovies[context.index()][row] = 1;
+                }
+            }
+        }
+        this.contextMovies = new ByteBuffer[Context.COUNT];
+        for (int context = 0; context < Context.COUNT; context++) {
+            this.contextMovies[context] = ByteBuffer.wrap(contextMovies[context]);
+        }
+    }
+
+    /**
+     * Lists computed beforehand, as written by {@link ModelWriter}.
+     *
+     * @param neighbourRows   catalogue rows of the neighbours, {@code neighbours} per movie
+     * @param neighbourScores their similarities
+     * @param neighbourCounts the length of the list of every movie
+     * @param contextMovies   per context, 1 for the movies rated in a matching context
+     */
+    ContentRecommender(MovieCatalog catalog, int neighbours, IntBuffer neighbourRows, DoubleBuffer neighbourScores,
+                       IntBuffer neighbourCounts, ByteBuffer[] contextMovies) {
+        this.catalog = catalog;
+        this.neighbours = neighbours;
+        this.neighbourRows = neighbourRows;
+        this.neighbourScores = neighbourScores;
+        this.neighbourCounts = neighbourCounts;
+        this.contextMovies = contextMovies;
+    }
+
+    public MovieCatalog catalog() {
+        return catalog;
+    }
+
+    public int neighbours() {
+        return neighbours;
+    }
+
+    int neighbourCount(int row) {
+        return neighbourCounts.get(row);
+    }
+
+    /**
+     * Catalogue row of the neighbour of the given rank.
+     */
+    int neighbourAt(int row, int rank) {
+        return neighbourRows.get(row * neighbours + rank);
+    }
+
+    double scoreAt(int row, int rank) {
+        return neighbourScores.get(row * neighbours + rank);
+    }
+
+    /**
+     * Whether the movie of the row was rated in a context matching the given one.
+     */
+    boolean ratedIn(Context context, int row) {
+        return contextMovies[context.index()].get(row) != 0;
+    }
+
+    /**
+     * Top n recommendations for the favourites in the context, scored by cosine similarity.
+     */
+    public List<ScoredMovie> topK(long[] favouriteIds, Context context, int n) {
+        if (n <= 0 || favouriteIds.length == 0) {
+            return Collections.emptyList();
+        }
+        long[] movieIds = new long[n];
+        double[] scores = new double[n];
+        int count = topK(favouriteIds, context, n, movieIds, scores);
+        return scoredMovies(movieIds, scores, count);
+    }
+
+    /**
+     * Recommendations offset to offset + n - 1 of the full ranking for the favourites in the
+     * context, where every favourite contributes all its precomputed neighbours rather than its
+     * n best, so consecutive pages never overlap or leave out a movie.
+     */
+    public List<ScoredMovie> page(long[] favouriteIds, Context context, int offset, int n) {
+        if (n <= 0 || favouriteIds.length == 0) {
+            return Collections.emptyList();
+        }
+        long[] movieIds = new long[n];
+        double[] scores = new double[n];
+        int count = page(favouriteIds, context, offset, n, movieIds, scores);
+        return scoredMovies(movieIds, scores, count);
+    }
+
+    private static List<ScoredMovie> scoredMovies(long[] movieIds, double[] scores, int count) {
+        List<ScoredMovie> recommendations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            recommendations.add(new ScoredMovie(movieIds[i], scores[i]));
+        }
+        return recommendations;
+    }
+
+    /**
+     * Same as {@link #topK(long[], Context, int)}, writing the recommendations to
+     * {@code movieIds}/{@code scores}, which must hold n entries. Does not allocate once the
+     * calling thread's buffers have grown to the query size.
+     *
+     * @return the number of recommendations written
+     */
+    public int topK(long[] favouriteIds, Context context, int n, long[] movieIds, double[] scores) {
+        return merge(favouriteIds, context, n, 0, n, movieIds, scores);
+    }
+
+    /**
+     * Same as {@link #page(long[], Context, int, int)}, writing the recommendations to
+     * {@code movieIds}/{@code scores}, which must hold n entries.
+     *
+     * @return the number of recommendations written, less than n past the end of the ranking
+     */
+    public int page(long[] favouriteIds, Context context, int offset, int n, long[] movieIds, double[] scores) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Negative offset: " + offset);
+        }
+        return merge(favouriteIds, context, neighbours, offset, n, movieIds, scores);
+    }
+
+    /**
+     * Merges the first {@code depth} in-context neighbours of every favourite and writes
+     * recommendations offset to offset + n - 1 of the result.
+     */
+    private int merge(long[] favouriteIds, Context context, int depth, int offset, int n,
+                      long[] movieIds, double[] scores) {
+        if (n <= 0 || favouriteIds.length == 0) {
+            return 0;
+        }
+        int perFavourite = Math.min(depth, neighbours);
+        // Every favourite contributes at most perFavourite candidates.
+        int end = (int) Math.min((long) offset + n, (long) perFavourite * favouriteIds.length);
+        if (offset >= end) {
+            return 0;
+        }
+        Scratch s = scratch.get();
+        s.ensureCapacity(favouriteIds.length, perFavourite, end);
+        int favourites = favouriteRows(favouriteIds, s.favouriteRows);
+        ByteBuffer inContext = contextMovies[context.index()];
+
+        // Best similarity of every candidate, in the order candidates were first found.
+        int stamp = s.nextStamp();
+        int candidates = 0;
+        for (int f = 0; f < favourites; f++) {
+            int favouriteRow = s.favouriteRows[f];
+            int start = favouriteRow * neighbours;
+            int taken = 0;
+            for (int i = start; i < start + neighbourCounts.get(favouriteRow) && taken < perFavourite; i++) {
+                int row = neighbourRows.get(i);
+                if (inContext.get(row) == 0) {
+                    continue;
+                }
+                taken++;
+                if (Arrays.binarySearch(s.favouriteRows, 0, favourites, row) >= 0) {
+                    continue;
+                }
+                if (s.stamps[row] != stamp) {
+                    s.stamps[row] = stamp;
+                    s.positions[row] = candidates;
+                    s.candidateRows[candidates] = row;
+                    s.candidateScores[candidates] = neighbourScores.get(i);
+                    candidates++;
+                } else if (neighbourScores.get(i) > s.candidateScores[s.positions[row]]) {
+                    s.candidateScores[s.positions[row]] = neighbourScores.get(i);
+                }
+            }
+        }
+
+        BoundedMinHeap best = s.best;
+        best.reset(end);
+        for (int position = 0; position < candidates; position++) {
+            best.offer(position, s.candidateScores[position]);
+        }
+        int count = best.drain(s.topPositions, s.topScores);
+        for (int i = offset; i < count; i++) {
+            movieIds[i - offset] = catalog.movieIdAt(s.candidateRows[s.topPositions[i]]);
+            scores[i - offset] = s.topScores[i];
+        }
+        return Math.max(count - offset, 0);
+    }
+
+    /**
+     * Writes the distinct catalogue rows of the known favourites to {@code rows}, ascending like
+     * the Python movie index.
+     *
+     * @return the number of rows written
+     */
+    private int favouriteRows(long[] favouriteIds, int[] rows) {
+        int size = 0;
+        for (long movieId : favouriteIds) {
+            int row = catalog.rowOf(movieId);
+            if (row >= 0) {
+                rows[size++] = row;
+            }
+        }
+        Arrays.sort(rows, 0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || rows[i] != rows[i - 1]) {
+                rows[distinct++] = rows[i];
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Per-thread query buffers, grown to the largest query seen.
+     */
+    private final class Scratch {
+
+        final int[] stamps = new int[catalog.size()];
+        final int[] positions = new int[catalog.size()];
+        final BoundedMinHeap best = new BoundedMinHeap(0);
+        int stamp;
+        int[] favouriteRows = new int[0];
+        int[] candidateRows = new int[0];
+        double[] candidateScores = new double[0];
+        int[] topPositions = new int[0];
+        double[] topScores = new double[0];
+
+        int nextStamp() {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+
+        void ensureCapacity(int favourites, int perFavourite, int n) {
+            if (favouriteRows.length < favourites) {
+                favouriteRows = new int[favourites];
+            }
+            if (candidateRows.length < favourites * perFavourite) {
+                candidateRows = new int[favourites * perFavourite];
+                candidateScores = new double[favourites * perFavourite];
+            }
+            if (topPositions.length < n) {
+                topPositions = new int[n];
+                topScores = new double[n];
+            }
+        }
+    }
+}
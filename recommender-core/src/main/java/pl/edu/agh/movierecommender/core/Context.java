@@ -0,0 +1,147 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * User context of a recommendation: time of week, location and companion.
+ *
+ * There are only {@link #COUNT} contexts, each identified by a dense {@link #index()}.
+ */
+public final class Context {
+
+    public enum Time {
+        WEEKDAY("Weekday"), WEEKEND("Weekend");
+
+        private final String label;
+
+        Time(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public enum Location {
+        HOME("Home"), CINEMA("Cinema");
+
+        private final String label;
+
+        Location(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public enum Companion {
+        ALONE("Alone"), PARTNER("Partner"), FAMILY("Family");
+
+        private final String label;
+
+        Companion(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public static final int COUNT = Time.values().length * Location.values().length * Companion.values().length;
+
+    private static final List<Context> ALL;
+
+    static {
+        List<Context> all = new ArrayList<>(COUNT);
+        for (Time time : Time.values()) {
+            for (Location location : Location.values()) {
+                for (Companion companion : Companion.values()) {
+                    all.add(new Context(time, location, companion, all.size()));
+                }
+            }
+        }
+        ALL = Collections.unmodifiableList(all);
+    }
+
+    private final Time time;
+    private final Location location;
+    private final Companion companion;
+    private final int index;
+
+    private Context(Time time, Location location, Companion companion, int index) {
+        this.time = time;
+        this.location = location;
+        this.companion = companion;
+        this.index = index;
+    }
+
+    /**
+     * All contexts, ordered by {@link #index()}.
+     */
+    public static List<Context> all() {
+        return ALL;
+    }
+
+    public static Context of(Time time, Location location, Companion companion) {
+        return ALL.get((time.ordinal() * Location.values().length + location.ordinal())
+                * Companion.values().length + companion.ordinal());
+    }
+
+    /**
+     * Parses the labels used by the client and the rating data, e.g. "Weekday", "Home", "Alone".
+     *
+     * @throws IllegalArgumentException if a label is unknown
+     */
+    public static Context of(String time, String location, String companion) {
+        return of(parse(Time.class, time), parse(Location.class, location), parse(Companion.class, companion));
+    }
+
+    public static <E extends Enum<E>> E parse(Class<E> type, String label) {
+        for (E value : type.getEnumConstants()) {
+            if (value.name().equalsIgnoreCase(label)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Unknown " + type.getSimpleName().toLowerCase() + ": " + label);
+    }
+
+    public Time getTime() {
+        return time;
+    }
+
+    public Location getLocation() {
+        return location;
+    }
+
+    public Companion getCompanion() {
+        return companion;
+    }
+
+    /**
+     * Dense index in [0, {@link #COUNT}).
+     */
+    public int index() {
+        return index;
+    }
+
+    /**
+     * Whether a rating given in the other context is used for recommendations in this one.
+     *
+     * Same pre-filtering as the Python recommenders: a rating matches if any of the time,
+     * location or companion is the same.
+     */
+    public boolean matches(Context other) {
+        return time == other.time || location == other.location || companion == other.companion;
+    }
+
+    @Override
+    public String toString() {
+        return time.getLabel() + "/" + location.getLabel() + "/" + companion.getLabel();
+    }
+}
@@ -0,0 +1,46 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.util.Arrays;
+
+/**
+ * Cosine similarity between the rows of a sparse matrix.
+ *
+ * Only the columns of the queried row are visited, through the transposed matrix, so the cost
+ * is proportional to the co-occurrences rather than to the number of rows.
+ * Rows without values have a similarity of 0 to everything, like in scikit-learn.
+ */
+final class CosineSimilarity {
+
+    private final SparseMatrix matrix;
+    private final SparseMatrix transposed;
+    private final double[] norms;
+
+    CosineSimilarity(SparseMatrix matrix) {
+        this.matrix = matrix;
+        this.transposed = matrix.transpose();
+        this.norms = matrix.rowNorms();
+    }
+
+    double norm(int row) {
+        return norms[row];
+    }
+
+    /**
+     * Fills {@code out} with the cosine similarity of the row to every row of the matrix.
+     */
+    void similarities(int row, double[] out) {
+        int rows = matrix.rows();
+        Arrays.fill(out, 0, rows, 0);
+        for (int p = matrix.rowStart(row); p < matrix.rowEnd(row); p++) {
+            int column = matrix.columnAt(p);
+            double value = matrix.valueAt(p);
+            for (int q = transposed.rowStart(column); q < transposed.rowEnd(column); q++) {
+                out[transposed.columnAt(q)] += value * transposed.valueAt(q);
+            }
+        }
+        for (int other = 0; other < rows; other++) {
+            double denominator = norms[row] * norms[other];
+            out[other] = denominator == 0 ? 0 : out[other] / denominator;
+        }
+    }
+}
@@ -0,0 +1,540 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Approximate cosine nearest neighbours of the rows of a sparse matrix, through a hierarchical
+ * navigable small world graph (HNSW, Malkov and Yashunin).
+ *
+ * Every row is a node linked to about {@link Parameters#getM()} similar rows on each of its
+ * layers, the upper layers holding exponentially fewer nodes. A new node is linked by
+ * descending greedily from the top layer and exploring the lower ones best first, the bottom
+ * one also from earlier rows sharing one of its columns, which sparse rows with few
+ * overlapping columns would otherwise hardly reach. Queries are
+ * rows of the index, so they start right from the row's own links on the bottom layer and
+ * explore best first from there, keeping the {@code ef} best nodes found: a larger
+ * {@link Parameters#getEfSearch()} raises the recall at the cost of latency,
+ * while {@link Parameters#getM()} and {@link Parameters#getEfConstruction()} trade build time
+ * and memory for the quality of the graph. The build is single-threaded and deterministic for
+ * a given seed.
+ */
+public final class HnswIndex {
+
+    /**
+     * Recall/latency trade-off of the index.
+     */
+    public static final class Parameters {
+
+        public static final Parameters DEFAULT = new Parameters(16, 100, 50, 42);
+
+        private final int m;
+        private final int efConstruction;
+        private final int efSearch;
+        private final long seed;
+
+        /**
+         * @param m              links per node on the upper layers, twice as many on the bottom one
+         * @param efConstruction nodes explored when linking a new node
+         * @param efSearch       nodes explored by a query, at least k
+         * @param seed           seed of the random layer assignment
+         */
+        public Parameters(int m, int efConstruction, int efSearch, long seed) {
+            if (m < 2 || efConstruction < 1 || efSearch < 1) {
+                throw new IllegalArgumentException("Invalid HNSW parameters: m " + m
+                        + ", efConstruction " + efConstruction + ", efSearch " + efSearch);
+            }
+            this.m = m;
+            this.efConstruction = efConstruction;
+            this.efSearch = efSearch;
+            this.seed = seed;
+        }
+
+        public int getM() {
+            return m;
+        }
+
+        public int getEfConstruction() {
+            return efConstruction;
+        }
+
+        public int getEfSearch() {
+            return efSearch;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        @Override
+        public String toString() {
+            return "m " + m + ", efConstruction " + efConstruction + ", efSearch " + efSearch;
+        }
+    }
+
+    private final SparseMatrix matrix;
+    private final Parameters parameters;
+    private final double[] norms;
+    /**
+     * Bottom layer links: for every node, a count then up to 2m nodes.
+     */
+    private final int[] bottomLinks;
+    /**
+     * Upper layer links of every node above the bottom layer: for each of its layers, a count
+     * then up to m nodes.
+     */
+    private final int[][] upperLinks;
+    private int entryPoint = -1;
+    private int topLevel = -1;
+    private final ThreadLocal<Scratch> scratch;
+
+    private HnswIndex(SparseMatrix matrix, Parameters parameters) {
+        this.matrix = matrix;
+        this.parameters = parameters;
+        this.norms = matrix.rowNorms();
+        int rows = matrix.rows();
+        bottomLinks = new int[rows * (2 * parameters.getM() + 1)];
+        upperLinks = new int[rows][];
+        scratch = ThreadLocal.withInitial(() -> new Scratch(rows, matrix.columns()));
+
+        Random random = new Random(parameters.getSeed());
+        double levelFactor = 1 / Math.log(parameters.getM());
+        Scratch s = scratch.get();
+        // Last inserted row having each column, seeding the bottom layer search of new rows.
+        int[] lastRowOfColumn = new int[matrix.columns()];
+        Arrays.fill(lastRowOfColumn, -1);
+        for (int row = 0; row < rows; row++) {
+            int level = (int) (-Math.log(1 - random.nextDouble()) * levelFactor);
+            if (level > 0) {
+                upperLinks[row] = new int[level * (parameters.getM() + 1)];
+            }
+            insert(row, level, lastRowOfColumn, s);
+        }
+    }
+
+    public static HnswIndex build(SparseMatrix matrix, Parameters parameters) {
+        return new HnswIndex(matrix, parameters);
+    }
+
+    public Parameters parameters() {
+        return parameters;
+    }
+
+    /**
+     * Writes the approximate k most similar rows of the row to {@code rows}/{@code scores}
+     * starting at {@code offset}, best first, lower rows first on ties, like {@link TopN}.
+     *
+     * @param skipRow row never selected, or -1
+     * @return the number of rows written, at most k
+     */
+    public int nearest(int row, int k, int skipRow, int[] rows, double[] scores, int offset) {
+        return nearest(row, k, skipRow, parameters.getEfSearch(), rows, scores, offset);
+    }
+
+    /**
+     * Same as {@link #nearest(int, int, int, int[], double[], int)} exploring ef nodes instead of
+     * {@link Parameters#getEfSearch()}.
+     */
+    public int nearest(int row, int k, int skipRow, int ef, int[] rows, double[] scores, int offset) {
+        Scratch s = scratch.get();
+        s.comparisons = 0;
+        s.scatter(matrix, row);
+        searchLayer(row, row, Math.max(ef, k + 1), 0, s);
+        s.unscatter(matrix, row);
+
+        s.ensureCapacity(k);
+        BoundedMinHeap best = s.best;
+        best.reset(k);
+        for (int i = 0; i < s.results.size; i++) {
+            if (s.results.nodes[i] != skipRow) {
+                best.offer(s.results.nodes[i], s.results.scores[i]);
+            }
+        }
+        int count = best.drain(s.topRows, s.topScores);
+        System.arraycopy(s.topRows, 0, rows, offset, count);
+        System.arraycopy(s.topScores, 0, scores, offset, count);
+        return count;
+    }
+
+    /**
+     * Similarity comparisons made by the last {@link #nearest} call of this thread.
+     */
+    public int lastComparisons() {
+        return scratch.get().comparisons;
+    }
+
+    private void insert(int row, int level, int[] lastRowOfColumn, Scratch s) {
+        if (entryPoint < 0) {
+            entryPoint = row;
+            topLevel = level;
+            for (int p = matrix.rowStart(row); p < matrix.rowEnd(row); p++) {
+                lastRowOfColumn[matrix.columnAt(p)] = row;
+            }
+            return;
+        }
+        s.scatter(matrix, row);
+        int node = entryPoint;
+        for (int l = topLevel; l > level; l--) {
+            node = greedy(row, node, l, s);
+        }
+        for (int l = Math.min(level, topLevel); l >= 0; l--) {
+            int ef = parameters.getEfConstruction();
+            int stamp = startSearch(s);
+            enter(row, node, ef, stamp, s);
+            if (l == 0) {
+                // Rows sharing a column with the new one are likely similar, and reachable
+                // even where the greedy descent found no path towards them.
+                for (int p = matrix.rowStart(row); p < matrix.rowEnd(row); p++) {
+                    int seed = lastRowOfColumn[matrix.columnAt(p)];
+                    if (seed >= 0) {
+                        enter(row, seed, ef, stamp, s);
+                    }
+                }
+            }
+            expand(row, ef, l, stamp, s);
+            node = s.results.best();
+            int selected = selectNeighbours(s.results, parameters.getM(), s);
+            for (int i = 0; i < selected; i++) {
+                int neighbour = s.selectedNodes[i];
+                addLink(row, l, neighbour);
+                addLink(neighbour, l, row);
+            }
+        }
+        s.unscatter(matrix, row);
+        for (int p = matrix.rowStart(row); p < matrix.rowEnd(row); p++) {
+            lastRowOfColumn[matrix.columnAt(p)] = row;
+        }
+        if (level > topLevel) {
+            entryPoint = row;
+            topLevel = level;
+        }
+    }
+
+    /**
+     * Moves from the node to its most similar neighbour on the layer until none is better.
+     */
+    private int greedy(int query, int node, int level, Scratch s) {
+        double score = similarity(query, node, s);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] links = links(node, level);
+            int start = linkStart(node, level);
+            for (int i = 0; i < links[start]; i++) {
+                int candidate = links[start + 1 + i];
+                double candidateScore = similarity(query, candidate, s);
+                if (candidateScore > score) {
+                    score = candidateScore;
+                    node = candidate;
+                    improved = true;
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Best-first search of the layer from the entry node, leaving the ef best nodes found in
+     * {@code s.results}.
+     */
+    private void searchLayer(int query, int entry, int ef, int level, Scratch s) {
+        int stamp = startSearch(s);
+        enter(query, entry, ef, stamp, s);
+        expand(query, ef, level, stamp, s);
+    }
+
+    private int startSearch(Scratch s) {
+        s.candidates.clear();
+        s.results.clear();
+        return s.nextStamp();
+    }
+
+    private void enter(int query, int node, int ef, int stamp, Scratch s) {
+        if (s.visited[node] == stamp) {
+            return;
+        }
+        s.visited[node] = stamp;
+        double score = similarity(query, node, s);
+        s.candidates.push(node, score);
+        s.results.push(node, score);
+        if (s.results.size > ef) {
+            s.results.pop();
+        }
+    }
+
+    private void expand(int query, int ef, int level, int stamp, Scratch s) {
+        while (s.candidates.size > 0) {
+            double score = s.candidates.topScore();
+            if (s.results.size >= ef && score < s.results.topScore()) {
+                break;
+            }
+            int node = s.candidates.pop();
+            int[] links = links(node, level);
+            int start = linkStart(node, level);
+            for (int i = 0; i < links[start]; i++) {
+                int neighbour = links[start + 1 + i];
+                if (s.visited[neighbour] == stamp) {
+                    continue;
+                }
+                s.visited[neighbour] = stamp;
+                double neighbourScore = similarity(query, neighbour, s);
+                if (s.results.size < ef || neighbourScore > s.results.topScore()) {
+                    s.candidates.push(neighbour, neighbourScore);
+                    s.results.push(neighbour, neighbourScore);
+                    if (s.results.size > ef) {
+                        s.results.pop();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks up to m of the found nodes, best first, skipping those more similar to an already
+     * picked node than to the query, which keeps links spread across clusters.
+     *
+     * @return the number of nodes written to {@code s.selectedNodes}
+     */
+    private int selectNeighbours(Heap found, int m, Scratch s) {
+        s.ensureCapacity(found.size);
+        int count = found.drainBestFirst(s.foundNodes, s.foundScores);
+        int selected = 0;
+        for (int i = 0; i < count && selected < m; i++) {
+            int candidate = s.foundNodes[i];
+            boolean keep = true;
+            for (int j = 0; j < selected && keep; j++) {
+                keep = pairSimilarity(candidate, s.selectedNodes[j]) <= s.foundScores[i];
+            }
+            if (keep) {
+                s.selectedNodes[selected++] = candidate;
+            }
+        }
+        return selected;
+    }
+
+    private void addLink(int node, int level, int link) {
+        int[] links = links(node, level);
+        int start = linkStart(node, level);
+        int capacity = level == 0 ? 2 * parameters.getM() : parameters.getM();
+        if (links[start] < capacity) {
+            links[start + 1 + links[start]++] = link;
+        } else {
+            // Full: the new link replaces the least similar one, if it is more similar.
+            int worst = 0;
+            double worstScore = Double.MAX_VALUE;
+            for (int i = 0; i < links[start]; i++) {
+                double score = pairSimilarity(node, links[start + 1 + i]);
+                if (score < worstScore) {
+                    worstScore = score;
+                    worst = i;
+                }
+            }
+            if (pairSimilarity(node, link) > worstScore) {
+                links[start + 1 + worst] = link;
+            }
+        }
+    }
+
+    private int[] links(int node, int level) {
+        return level == 0 ? bottomLinks : upperLinks[node];
+    }
+
+    private int linkStart(int node, int level) {
+        return level == 0 ? node * (2 * parameters.getM() + 1) : (level - 1) * (parameters.getM() + 1);
+    }
+
+    /**
+     * Cosine similarity of the node to the query row scattered in {@code s.dense}.
+     */
+    private double similarity(int query, int node, Scratch s) {
+        s.comparisons++;
+        double denominator = norms[query] * norms[node];
+        if (denominator == 0) {
+            return 0;
+        }
+        double dot = 0;
+        for (int p = matrix.rowStart(node); p < matrix.rowEnd(node); p++) {
+            dot += matrix.valueAt(p) * s.dense[matrix.columnAt(p)];
+        }
+        return dot / denominator;
+    }
+
+    /**
+     * Cosine similarity of two rows, merging their column-ordered entries.
+     */
+    private double pairSimilarity(int a, int b) {
+        double denominator = norms[a] * norms[b];
+        if (denominator == 0) {
+            return 0;
+        }
+        double dot = 0;
+        int p = matrix.rowStart(a);
+        int q = matrix.rowStart(b);
+        while (p < matrix.rowEnd(a) && q < matrix.rowEnd(b)) {
+            int columnA = matrix.columnAt(p);
+            int columnB = matrix.columnAt(q);
+            if (columnA == columnB) {
+                dot += matrix.valueAt(p++) * matrix.valueAt(q++);
+            } else if (columnA < columnB) {
+                p++;
+            } else {
+                q++;
+            }
+        }
+        return dot / denominator;
+    }
+
+    /**
+     * Binary heap of nodes by score, the best on top if {@code max}, else the worst.
+     */
+    private static final class Heap {
+
+        final boolean max;
+        int[] nodes = new int[16];
+        double[] scores = new double[16];
+        int size;
+
+        Heap(boolean max) {
+            this.max = max;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        double topScore() {
+            return scores[0];
+        }
+
+        void push(int node, double score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!above(score, node, scores[parent], nodes[parent])) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            int node = nodes[size];
+            double score = scores[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && above(scores[child + 1], nodes[child + 1], scores[child], nodes[child])) {
+                    child++;
+                }
+                if (!above(scores[child], nodes[child], score, node)) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+            return top;
+        }
+
+        /**
+         * Best node of a min-heap.
+         */
+        int best() {
+            int best = 0;
+            for (int i = 1; i < size; i++) {
+                if (scores[i] > scores[best]) {
+                    best = i;
+                }
+            }
+            return nodes[best];
+        }
+
+        /**
+         * Empties a min-heap into the arrays, best first.
+         */
+        int drainBestFirst(int[] outNodes, double[] outScores) {
+            int count = size;
+            while (size > 0) {
+                outScores[size - 1] = scores[0];
+                outNodes[size - 1] = pop();
+            }
+            return count;
+        }
+
+        private boolean above(double score, int node, double otherScore, int otherNode) {
+            if (score != otherScore) {
+                return max == score > otherScore;
+            }
+            return max == node < otherNode;
+        }
+    }
+
+    /**
+     * Per-thread search buffers.
+     */
+    private static final class Scratch {
+
+        final double[] dense;
+        final int[] visited;
+        int stamp;
+        int comparisons;
+        final Heap candidates = new Heap(true);
+        final Heap results = new Heap(false);
+        final BoundedMinHeap best = new BoundedMinHeap(0);
+        int[] foundNodes = new int[0];
+        double[] foundScores = new double[0];
+        int[] selectedNodes = new int[0];
+        int[] topRows = new int[0];
+        double[] topScores = new double[0];
+
+        Scratch(int rows, int columns) {
+            dense = new double[columns];
+            visited = new int[rows];
+        }
+
+        int nextStamp() {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+
+        void ensureCapacity(int size) {
+            if (foundNodes.length < size) {
+                foundNodes = new int[size];
+                foundScores = new double[size];
+                selectedNodes = new int[size];
+                topRows = new int[size];
+                topScores = new double[size];
+            }
+        }
+
+        void scatter(SparseMatrix matrix, int row) {
+            for (int p = matrix.rowStart(row); p < matrix.rowEnd(row); p++) {
+                dense[matrix.columnAt(p)] = matrix.valueAt(p);
+            }
+        }
+
+        void unscatter(SparseMatrix matrix, int row) {
+            for (int p = matrix.rowStart(row); p < matrix.rowEnd(row); p++) {
+                dense[matrix.columnAt(p)] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Item-based collaborative filtering with cosine similarity, the Java counterpart of
+ * KnnItemCollaborativeRecommender in recommender/movie_recommenders.py.
+ *
+ * For every favourite, its n + 1 nearest movies in the context's rating matrix are taken
+ * (the favourite itself included), then all neighbours are merged by similarity, skipping
+ * favourites and duplicates, until n recommendations are found. Ties are broken by favourite
+ * order and then by movie id, to keep the results deterministic.
+ * Neighbours are looked up in precomputed {@link NeighbourLists}, a {@link SimilarityIndex}
+ * built once or a {@link LiveSimilarityIndex} kept up to date, so n is limited to k - 1.
+ *
+ * The neighbour lists are already sorted, so they are merged through a heap of their heads
+ * and the merge stops as soon as n recommendations are found. Working buffers are kept per
+ * thread, so {@link #topK(long[], Context, int, long[], double[])} does not allocate once
+ * warmed up.
+ *
+ * Pages, e.g. recommendations 20 to 29, are cut from one ranking whatever their offset: all k
+ * neighbours of every favourite are merged, so each page continues the one before. The merge
+ * skips the first offset recommendations without copying them and stops at offset + n.
+ */
+public class ItemKnnRecommender {
+
+    private final NeighbourLists lists;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public ItemKnnRecommender(List<Rating> ratings) {
+        this(SimilarityIndex.build(ratings));
+    }
+
+    public ItemKnnRecommender(NeighbourLists lists) {
+        this.lists = lists;
+    }
+
+    public NeighbourLists lists() {
+        return lists;
+    }
+
+    /**
+     * Top n recommendations for the favourites in the context, scored by cosine similarity
+     * (the Python recommender reports the cosine distance, i.e. 1 - score).
+     */
+    public List<ScoredMovie> topK(long[] favouriteIds, Context context, int n) {
+        if (n <= 0 || favouriteIds.length == 0) {
+            return Collections.emptyList();
+        }
+        long[] movieIds = new long[n];
+        double[] scores = new double[n];
+        int count = topK(favouriteIds, context, n, movieIds, scores);
+        return scoredMovies(movieIds, scores, count);
+    }
+
+    /**
+     * Recommendations offset to offset + n - 1 of the full ranking for the favourites in the
+     * context, the one merging all k neighbours of every favourite. Unlike top n, which only
+     * merges n + 1 neighbours, consecutive pages never overlap or leave out a movie.
+     */
+    public List<ScoredMovie> page(long[] favouriteIds, Context context, int offset, int n) {
+        if (n <= 0 || favouriteIds.length == 0) {
+            return Collections.emptyList();
+        }
+        long[] movieIds = new long[n];
+        double[] scores = new double[n];
+        int count = page(favouriteIds, context, offset, n, movieIds, scores);
+        return scoredMovies(movieIds, scores, count);
+    }
+
+    private static List<ScoredMovie> scoredMovies(long[] movieIds, double[] scores, int count) {
+        List<ScoredMovie> recommendations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            recommendations.add(new ScoredMovie(movieIds[i], scores[i]));
+        }
+        return recommendations;
+    }
+
+    /**
+     * Same as {@link #topK(long[], Context, int)}, writing the recommendations to
+     * {@code movieIds}/{@code scores}, which must hold n entries.
+     *
+     * @return the number of recommendations written
+     */
+    public int topK(long[] favouriteIds, Context context, int n, long[] movieIds, double[] scores) {
+        return merge(favouriteIds, context, Math.min(n + 1, lists.k()), 0, n, movieIds, scores);
+    }
+
+    /**
+     * Same as {@link #page(long[], Context, int, int)}, writing the recommendations to
+     * {@code movieIds}/{@code scores}, which must hold n entries.
+     *
+     * @return the number of recommendations written, less than n past the end of the ranking
+     */
+    public int page(long[] favouriteIds, Context context, int offset, int n, long[] movieIds, double[] scores) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Negative offset: " + offset);
+        }
+        return merge(favouriteIds, context, lists.k(), offset, n, movieIds, scores);
+    }
+
+    /**
+     * Merges up to {@code neighbours} neighbours of every favourite and writes recommendations
+     * offset to offset + n - 1 of the result.
+     */
+    private int merge(long[] favouriteIds, Context context, int neighbours, int offset, int n,
+                      long[] movieIds, double[] scores) {
+        if (n <= 0 || favouriteIds.length == 0) {
+            return 0;
+        }
+        int end = (int) Math.min((long) offset + n, Integer.MAX_VALUE);
+        Scratch s = scratch.get();
+        s.ensureCapacity(favouriteIds.length, neighbours);
+        LongHashSet excluded = s.excluded;
+        excluded.clear();
+
+        int heapSize = 0;
+        int candidates = 0;
+        for (long favouriteId : favouriteIds) {
+            if (!excluded.add(favouriteId)) {
+                continue;
+            }
+            int count = lists.neighbours(context, favouriteId, neighbours,
+                    s.candidateIds, s.candidateScores, candidates);
+            if (count > 0) {
+                s.heads[heapSize] = candidates;
+                s.ends[heapSize] = candidates + count;
+                s.heap[heapSize] = heapSize;
+                heapSize++;
+                candidates += count;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(s, i, heapSize);
+        }
+
+        // Pop the best head of all lists; equal scores keep their favourite/rank order.
+        int rank = 0;
+        while (heapSize > 0 && rank < end) {
+            int list = s.heap[0];
+            int position = s.heads[list]++;
+            if (s.heads[list] == s.ends[list]) {
+                s.heap[0] = s.heap[--heapSize];
+            }
+            siftDown(s, 0, heapSize);
+            long movieId = s.candidateIds[position];
+            if (excluded.add(movieId)) {
+                if (rank >= offset) {
+                    movieIds[rank - offset] = movieId;
+                    scores[rank - offset] = s.candidateScores[position];
+                }
+                rank++;
+            }
+        }
+        return Math.max(rank - offset, 0);
+    }
+
+    private static void siftDown(Scratch s, int i, int heapSize) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                return;
+            }
+            if (child + 1 < heapSize && before(s, s.heap[child + 1], s.heap[child])) {
+                child++;
+            }
+            if (!before(s, s.heap[child], s.heap[i])) {
+                return;
+            }
+            int list = s.heap[i];
+            s.heap[i] = s.heap[child];
+            s.heap[child] = list;
+            i = child;
+        }
+    }
+
+    /**
+     * Whether the head of the list is merged before the head of the other one.
+     */
+    private static boolean before(Scratch s, int list, int other) {
+        double score = s.candidateScores[s.heads[list]];
+        double otherScore = s.candidateScores[s.heads[other]];
+        return score > otherScore || (score == otherScore && list < other);
+    }
+
+    /**
+     * Per-thread merge buffers, grown to the largest query seen.
+     */
+    private static final class Scratch {
+
+        final LongHashSet excluded = new LongHashSet(64);
+        long[] candidateIds = new long[0];
+        double[] candidateScores = new double[0];
+        int[] heads = new int[0];
+        int[] ends = new int[0];
+        int[] heap = new int[0];
+
+        void ensureCapacity(int favourites, int neighbours) {
+            if (heads.length < favourites) {
+                heads = new int[favourites];
+                ends = new int[favourites];
+                heap = new int[favourites];
+            }
+            if (candidateIds.length < favourites * neighbours) {
+                candidateIds = new long[favourites * neighbours];
+                candidateScores = new double[favourites * neighbours];
+            }
+        }
+    }
+}
@@ -0,0 +1,620 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@link NeighbourLists} kept up to date as ratings come in, without rebuilding the model.
+ *
+ * A new rating only changes the rated movie's vector in the contexts it matches, so only the
+ * similarities of that movie to the movies sharing a user with it are recomputed: its own list
+ * is rebuilt and it is moved within the lists of the others. A list whose tail may now belong
+ * to a movie outside of it is recomputed. {@link #rebuild()} recomputes everything from scratch
+ * and returns how many lists the updates got wrong; the server schedules it as a periodic
+ * correctness check.
+ *
+ * Movies and users get dense indices in order of their first rating, and all state is kept in
+ * primitive arrays by index: the positions of every movie's and user's ratings, and per
+ * context the neighbour lists, the vector norms and the movies ordered by id. Updates reuse
+ * scratch arrays, so adding a rating allocates next to nothing.
+ *
+ * Favourites are not part of the model, they are the query: a new favourite is used as soon as
+ * it is passed to {@link ItemKnnRecommender#topK}.
+ */
+public final class LiveSimilarityIndex implements NeighbourLists {
+
+    private static final double TOLERANCE = 1e-9;
+    private static final int INITIAL_CAPACITY = 256;
+
+    // Whether a rating given in the context of the column is used in the context of the row.
+    private static final boolean[][] MATCHES = new boolean[Context.COUNT][Context.COUNT];
+
+    static {
+        for (Context context : Context.all()) {
+            for (Context other : Context.all()) {
+                MATCHES[context.index()][other.index()] = context.matches(other);
+            }
+        }
+    }
+
+    private final int k;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // All ratings in order of arrival, and by position their movie and user index, value and
+    // context index.
+    private final List<Rating> ratings = new ArrayList<>();
+    private int[] ratingMovies = new int[INITIAL_CAPACITY];
+    private int[] ratingUsers = new int[INITIAL_CAPACITY];
+    private double[] ratingValues = new double[INITIAL_CAPACITY];
+    private int[] ratingContexts = new int[INITIAL_CAPACITY];
+
+    // Movies and users by index, with the positions of their ratings.
+    private final LongIntHashMap movieIndex = new LongIntHashMap(INITIAL_CAPACITY);
+    private long[] movieIds = new long[INITIAL_CAPACITY];
+    private int[][] movieRatings = new int[INITIAL_CAPACITY][];
+    private int[] movieRatingCounts = new int[INITIAL_CAPACITY];
+    private int movieCount;
+    private final LongIntHashMap userIndex = new LongIntHashMap(INITIAL_CAPACITY);
+    private int[] userIds = new int[INITIAL_CAPACITY];
+    private int[][] userRatings = new int[INITIAL_CAPACITY][];
+    private int[] userRatingCounts = new int[INITIAL_CAPACITY];
+    private int userCount;
+
+    // By context, then movie index: the neighbour list, null if nobody rated the movie in the
+    // context, and the norm of the movie's vector.
+    private final Neighbours[][] lists = new Neighbours[Context.COUNT][INITIAL_CAPACITY];
+    private final double[][] norms = new double[Context.COUNT][INITIAL_CAPACITY];
+    // By context, the indices of the movies rated in it, ordered by movie id.
+    private final int[][] contextMovies = new int[Context.COUNT][INITIAL_CAPACITY];
+    private final int[] contextMovieCounts = new int[Context.COUNT];
+
+    // Scratch space, guarded by the write lock.
+    private final Cells userCells = new Cells();
+    private final Cells movieCells = new Cells();
+    private final Similarities similarities = new Similarities();
+    private final Similarities otherSimilarities = new Similarities();
+
+    public LiveSimilarityIndex(List<Rating> ratings) {
+        this(ratings, SimilarityIndex.DEFAULT_K);
+    }
+
+    public LiveSimilarityIndex(List<Rating> ratings, int k) {
+        this.k = k;
+        for (Rating rating : ratings) {
+            index(rating);
+        }
+        install(SimilarityIndex.build(ratings, k), lists);
+    }
+
+    @Override
+    public int k() {
+        return k;
+    }
+
+    @Override
+    public int neighbours(Context context, long movieId, int max, long[] movieIds, double[] scores, int offset) {
+        lock.readLock().lock();
+        try {
+            int movie = movieIndex.get(movieId);
+            Neighbours list = movie != LongIntHashMap.MISSING ? lists[context.index()][movie] : null;
+            if (list == null) {
+                return 0;
+            }
+            int count = Math.min(max, list.size);
+            System.arraycopy(list.movieIds, 0, movieIds, offset, count);
+            System.arraycopy(list.scores, 0, scores, offset, count);
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the rating and updates the neighbour lists it affects.
+     */
+    public void add(Rating rating) {
+        lock.writeLock().lock();
+        try {
+            update(index(rating));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds all neighbour lists from scratch and replaces the incrementally updated ones.
+     * Ratings added during the rebuild are applied on top of the rebuilt lists.
+     *
+     * @return the number of lists that differed from the rebuilt ones, 0 unless the
+     *         incremental updates went wrong
+     */
+    public int rebuild() {
+        List<Rating> snapshot;
+        // The lists as of the snapshot, the live ones moving on with the ratings added meanwhile.
+        Neighbours[][] updated = new Neighbours[Context.COUNT][];
+        lock.readLock().lock();
+        try {
+            snapshot = new ArrayList<>(ratings);
+            for (int c = 0; c < Context.COUNT; c++) {
+                updated[c] = new Neighbours[movieCount];
+                for (int movie = 0; movie < movieCount; movie++) {
+                    Neighbours list = lists[c][movie];
+                    updated[c][movie] = list != null ? list.copy() : null;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        SimilarityIndex rebuilt = SimilarityIndex.build(snapshot, k);
+        lock.writeLock().lock();
+        try {
+            int mismatches = install(rebuilt, updated);
+            for (int position = snapshot.size(); position < ratings.size(); position++) {
+                update(position);
+            }
+            return mismatches;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records the rating and the indices of its movie and user.
+     *
+     * @return the rating's position
+     */
+    private int index(Rating rating) {
+        int position = ratings.size();
+        ratings.add(rating);
+        if (position == ratingMovies.length) {
+            int capacity = position * 2;
+            ratingMovies = Arrays.copyOf(ratingMovies, capacity);
+            ratingUsers = Arrays.copyOf(ratingUsers, capacity);
+            ratingValues = Arrays.copyOf(ratingValues, capacity);
+            ratingContexts = Arrays.copyOf(ratingContexts, capacity);
+        }
+        int movie = movie(rating.getMovieId());
+        int user = user(rating.getUserId());
+        ratingMovies[position] = movie;
+        ratingUsers[position] = user;
+        ratingValues[position] = rating.getValue();
+        ratingContexts[position] = rating.getContext().index();
+        movieRatings[movie] = append(movieRatings[movie], movieRatingCounts[movie]++, position);
+        userRatings[user] = append(userRatings[user], userRatingCounts[user]++, position);
+        return position;
+    }
+
+    private int movie(long movieId) {
+        int movie = movieIndex.get(movieId);
+        if (movie != LongIntHashMap.MISSING) {
+            return movie;
+        }
+        movie = movieCount++;
+        if (movie == movieIds.length) {
+            int capacity = movie * 2;
+            movieIds = Arrays.copyOf(movieIds, capacity);
+            movieRatings = Arrays.copyOf(movieRatings, capacity);
+            movieRatingCounts = Arrays.copyOf(movieRatingCounts, capacity);
+            for (int context = 0; context < Context.COUNT; context++) {
+                lists[context] = Arrays.copyOf(lists[context], capacity);
+                norms[context] = Arrays.copyOf(norms[context], capacity);
+                contextMovies[context] = Arrays.copyOf(contextMovies[context], capacity);
+            }
+        }
+        movieIds[movie] = movieId;
+        movieRatings[movie] = new int[4];
+        movieIndex.put(movieId, movie);
+        return movie;
+    }
+
+    private int user(int userId) {
+        int user = userIndex.get(userId);
+        if (user != LongIntHashMap.MISSING) {
+            return user;
+        }
+        user = userCount++;
+        if (user == userIds.length) {
+            int capacity = user * 2;
+            userIds = Arrays.copyOf(userIds, capacity);
+            userRatings = Arrays.copyOf(userRatings, capacity);
+            userRatingCounts = Arrays.copyOf(userRatingCounts, capacity);
+        }
+        userIds[user] = userId;
+        userRatings[user] = new int[4];
+        userIndex.put(userId, user);
+        return user;
+    }
+
+    private static int[] append(int[] array, int size, int value) {
+        if (size == array.length) {
+            array = Arrays.copyOf(array, size * 2);
+        }
+        array[size] = value;
+        return array;
+    }
+
+    /**
+     * Replaces the lists with the rebuilt ones and recomputes the norms of all movies.
+     *
+     * @param updated by context, then movie index, the lists to compare with the rebuilt ones
+     * @return the number of lists that differed
+     */
+    private int install(SimilarityIndex rebuilt, Neighbours[][] updated) {
+        int mismatches = 0;
+        for (Context context : Context.all()) {
+            int c = context.index();
+            SimilarityTable table = rebuilt.table(context);
+            Neighbours[] current = lists[c];
+            Neighbours[] fresh = new Neighbours[current.length];
+            // Table rows are ordered by movie id.
+            int[] movies = new int[current.length];
+            for (int row = 0; row < table.rows(); row++) {
+                Neighbours list = new Neighbours(k);
+                for (int rank = 0; rank < table.neighbourCount(row); rank++) {
+                    list.insert(rank, table.movieIdAt(table.neighbourAt(row, rank)), table.scoreAt(row, rank));
+                }
+                int movie = movieIndex.get(table.movieIdAt(row));
+                fresh[movie] = list;
+                movies[row] = movie;
+                if (!list.matches(updated[c][movie])) {
+                    mismatches++;
+                }
+            }
+            lists[c] = fresh;
+            contextMovies[c] = movies;
+            contextMovieCounts[c] = table.rows();
+
+            double[] contextNorms = new double[current.length];
+            for (int row = 0; row < table.rows(); row++) {
+                contextNorms[movies[row]] = norm(movieVector(movies[row], c));
+            }
+            norms[c] = contextNorms;
+        }
+        return mismatches;
+    }
+
+    private void update(int position) {
+        int movie = ratingMovies[position];
+        for (int c = 0; c < Context.COUNT; c++) {
+            if (!MATCHES[c][ratingContexts[position]]) {
+                continue;
+            }
+            boolean added = lists[c][movie] == null;
+            if (added) {
+                lists[c][movie] = new Neighbours(k);
+                addContextMovie(c, movie);
+            }
+            Similarities own = similarities(movie, c, similarities);
+            lists[c][movie].fill(own, contextMovies[c], contextMovieCounts[c], movieIds);
+
+            // A new movie may also displace the zero-similarity tail of unrelated lists.
+            if (added) {
+                for (int i = 0; i < contextMovieCounts[c]; i++) {
+                    offer(c, contextMovies[c][i], movie, own);
+                }
+            } else {
+                for (int i = 0; i < own.size; i++) {
+                    offer(c, own.movies[i], movie, own);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the movie within the other movie's list, recomputing the list if need be.
+     */
+    private void offer(int c, int other, int movie, Similarities own) {
+        Neighbours list = lists[c][other];
+        if (other != movie && list != null && !list.offer(movieIds[movie], own.get(other))) {
+            list.fill(similarities(other, c, otherSimilarities), contextMovies[c], contextMovieCounts[c], movieIds);
+        }
+    }
+
+    private void addContextMovie(int c, int movie) {
+        int[] movies = contextMovies[c];
+        int count = contextMovieCounts[c];
+        int at = 0;
+        while (at < count && movieIds[movies[at]] < movieIds[movie]) {
+            at++;
+        }
+        System.arraycopy(movies, at, movies, at + 1, count - at);
+        movies[at] = movie;
+        contextMovieCounts[c]++;
+    }
+
+    /**
+     * Cosine similarities of the movie to all movies sharing a user with it in the context,
+     * itself included; updates the movie's norm on the way.
+     */
+    private Similarities similarities(int movie, int c, Similarities similarities) {
+        Cells vector = movieVector(movie, c);
+        double norm = norm(vector);
+        norms[c][movie] = norm;
+
+        similarities.clear(movieCount);
+        for (int i = 0; i < vector.size; i++) {
+            int user = vector.keys[i];
+            double value = vector.average(user);
+            Cells userMovies = userVector(user, c);
+            for (int j = 0; j < userMovies.size; j++) {
+                int other = userMovies.keys[j];
+                similarities.add(other, value * userMovies.average(other));
+            }
+        }
+        for (int i = 0; i < similarities.size; i++) {
+            int other = similarities.movies[i];
+            double denominator = norm * norms[c][other];
+            similarities.values[other] = denominator == 0 ? 0 : similarities.values[other] / denominator;
+        }
+        return similarities;
+    }
+
+    /**
+     * The movie's ratings in the context by user, in order of user id like the columns of the
+     * rating matrix, so that sums are added up in the same order as by a rebuild.
+     */
+    private Cells movieVector(int movie, int c) {
+        userCells.clear(userCount);
+        int[] positions = movieRatings[movie];
+        for (int i = 0; i < movieRatingCounts[movie]; i++) {
+            int position = positions[i];
+            if (MATCHES[c][ratingContexts[position]]) {
+                userCells.add(ratingUsers[position], ratingValues[position]);
+            }
+        }
+        userCells.sortKeys(userIds);
+        return userCells;
+    }
+
+    /**
+     * The user's ratings in the context by movie.
+     */
+    private Cells userVector(int user, int c) {
+        movieCells.clear(movieCount);
+        int[] positions = userRatings[user];
+        for (int i = 0; i < userRatingCounts[user]; i++) {
+            int position = positions[i];
+            if (MATCHES[c][ratingContexts[position]]) {
+                movieCells.add(ratingMovies[position], ratingValues[position]);
+            }
+        }
+        return movieCells;
+    }
+
+    private static double norm(Cells vector) {
+        double sum = 0;
+        for (int i = 0; i < vector.size; i++) {
+            double value = vector.average(vector.keys[i]);
+            sum += value * value;
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Sums and counts of ratings by user or movie index, to average repeated ratings like the
+     * rating matrix does. Cleared in constant time, like {@link LongHashSet}.
+     */
+    private static final class Cells {
+
+        double[] sums = new double[INITIAL_CAPACITY];
+        int[] counts = new int[INITIAL_CAPACITY];
+        int[] stamps = new int[INITIAL_CAPACITY];
+        int stamp = 1;
+        // The indices with a cell, in order of their first rating.
+        int[] keys = new int[INITIAL_CAPACITY];
+        int size;
+
+        void clear(int capacity) {
+            if (capacity > stamps.length) {
+                int length = Math.max(capacity, stamps.length * 2);
+                sums = new double[length];
+                counts = new int[length];
+                stamps = new int[length];
+                keys = new int[length];
+                stamp = 0;
+            }
+            size = 0;
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+        }
+
+        void add(int key, double value) {
+            if (stamps[key] != stamp) {
+                stamps[key] = stamp;
+                sums[key] = 0;
+                counts[key] = 0;
+                keys[size++] = key;
+            }
+            sums[key] += value;
+            counts[key]++;
+        }
+
+        double average(int key) {
+            return sums[key] / counts[key];
+        }
+
+        /**
+         * Orders the keys by their ids.
+         */
+        void sortKeys(int[] ids) {
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) ids[keys[i]] << 32) | keys[i];
+            }
+            Arrays.sort(order);
+            for (int i = 0; i < size; i++) {
+                keys[i] = (int) order[i];
+            }
+        }
+    }
+
+    /**
+     * Similarities of one movie by movie index, the movies with one listed in {@link #movies}.
+     */
+    private static final class Similarities {
+
+        double[] values = new double[INITIAL_CAPACITY];
+        int[] stamps = new int[INITIAL_CAPACITY];
+        int stamp = 1;
+        int[] movies = new int[INITIAL_CAPACITY];
+        int size;
+
+        void clear(int capacity) {
+            if (capacity > stamps.length) {
+                int length = Math.max(capacity, stamps.length * 2);
+                values = new double[length];
+                stamps = new int[length];
+                movies = new int[length];
+                stamp = 0;
+            }
+            size = 0;
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+        }
+
+        void add(int movie, double value) {
+            if (stamps[movie] != stamp) {
+                stamps[movie] = stamp;
+                values[movie] = 0;
+                movies[size++] = movie;
+            }
+            values[movie] += value;
+        }
+
+        /**
+         * The similarity to the movie, 0 if it shares no user.
+         */
+        double get(int movie) {
+            return stamps[movie] == stamp ? values[movie] : 0;
+        }
+    }
+
+    /**
+     * Neighbours of one movie, best first, equal scores ordered by movie id like {@link TopN}.
+     */
+    private static final class Neighbours {
+
+        final long[] movieIds;
+        final double[] scores;
+        int size;
+
+        Neighbours(int k) {
+            movieIds = new long[k];
+            scores = new double[k];
+        }
+
+        Neighbours copy() {
+            Neighbours copy = new Neighbours(movieIds.length);
+            System.arraycopy(movieIds, 0, copy.movieIds, 0, size);
+            System.arraycopy(scores, 0, copy.scores, 0, size);
+            copy.size = size;
+            return copy;
+        }
+
+        /**
+         * Refills the list from the movie's non-zero similarities, padded with the lowest ids
+         * of the context's movies at similarity 0.
+         *
+         * @param movies indices of the context's movies, ordered by id
+         * @param ids movie ids by index
+         */
+        void fill(Similarities similarities, int[] movies, int count, long[] ids) {
+            size = 0;
+            for (int i = 0; i < similarities.size; i++) {
+                int movie = similarities.movies[i];
+                if (similarities.get(movie) > 0) {
+                    add(ids[movie], similarities.get(movie));
+                }
+            }
+            for (int i = 0; i < count && size < movieIds.length; i++) {
+                if (similarities.get(movies[i]) == 0) {
+                    insert(size, ids[movies[i]], 0);
+                }
+            }
+            for (int i = 0; i < similarities.size; i++) {
+                int movie = similarities.movies[i];
+                if (similarities.get(movie) < 0) {
+                    add(ids[movie], similarities.get(movie));
+                }
+            }
+        }
+
+        /**
+         * Moves the movie to its place for the new score, or drops it off the list.
+         *
+         * @return false if the list has to be recomputed, because the movie fell to the end of
+         *         a full list and a movie outside of it may now be better
+         */
+        boolean offer(long movieId, double score) {
+            int at = -1;
+            for (int i = 0; i < size && at < 0; i++) {
+                if (movieIds[i] == movieId) {
+                    at = i;
+                }
+            }
+            if (at >= 0) {
+                boolean truncated = size == movieIds.length;
+                System.arraycopy(movieIds, at + 1, movieIds, at, size - at - 1);
+                System.arraycopy(scores, at + 1, scores, at, size - at - 1);
+                size--;
+                int position = position(movieId, score);
+                if (truncated && position == size) {
+                    return false;
+                }
+                insert(position, movieId, score);
+                return true;
+            }
+            add(movieId, score);
+            return true;
+        }
+
+        /**
+         * Inserts a movie not in the list at its place, dropping the last one of a full list.
+         */
+        private void add(long movieId, double score) {
+            int position = position(movieId, score);
+            if (position < movieIds.length) {
+                if (size == movieIds.length) {
+                    size--;
+                }
+                insert(position, movieId, score);
+            }
+        }
+
+        private int position(long movieId, double score) {
+            int position = 0;
+            while (position < size && (scores[position] > score
+                    || (scores[position] == score && movieIds[position] < movieId))) {
+                position++;
+            }
+            return position;
+        }
+
+        void insert(int position, long movieId, double score) {
+            System.arraycopy(movieIds, position, movieIds, position + 1, size - position);
+            System.arraycopy(scores, position, scores, position + 1, size - position);
+            movieIds[position] = movieId;
+            scores[position] = score;
+            size++;
+        }
+
+        boolean matches(Neighbours other) {
+            if (other == null || other.size != size) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (movieIds[i] != other.movieIds[i] || Math.abs(scores[i] - other.scores[i]) > TOLERANCE) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
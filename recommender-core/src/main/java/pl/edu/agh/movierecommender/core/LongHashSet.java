@@ -0,0 +1,89 @@
+package pl.edu.agh.movierecommender.core;
+
+/**
+ * Open-addressing set of primitive longs, cleared in constant time so that it can be reused
+ * across queries without allocating.
+ */
+public final class LongHashSet {
+
+    private long[] keys;
+    private int[] stamps;
+    private int stamp = 1;
+    private int size;
+
+    public LongHashSet(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        keys = new long[capacity];
+        stamps = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        if (++stamp == Integer.MAX_VALUE) {
+            stamps = new int[stamps.length];
+            stamp = 1;
+        }
+    }
+
+    public boolean contains(long key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; stamps[slot] == stamp; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the key was not in the set yet
+     */
+    public boolean add(long key) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        for (; stamps[slot] == stamp; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return false;
+            }
+        }
+        keys[slot] = key;
+        stamps[slot] = stamp;
+        size++;
+        return true;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldStamps = stamps;
+        int oldStamp = stamp;
+        keys = new long[oldKeys.length * 2];
+        stamps = new int[oldKeys.length * 2];
+        stamp = 1;
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldStamps[slot] == oldStamp) {
+                add(oldKeys[slot]);
+            }
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
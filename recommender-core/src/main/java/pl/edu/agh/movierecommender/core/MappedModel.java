@@ -0,0 +1,314 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+/**
+ * Binary model written by {@link ModelWriter}, read in place from a memory-mapped file.
+ *
+ * Opening a model only maps the file, checks its header and creates views on the neighbour
+ * tables: nothing is parsed or copied, so an engine starts in milliseconds and every process
+ * serving the same file shares its pages. Neighbour lookups, collaborative and content-based,
+ * read the mapped tables directly; the metadata of a movie is decoded on first access and the
+ * ratings only on demand. The checksum, which reads every page, is only checked by
+ * {@link #verify()}.
+ */
+public final class MappedModel implements NeighbourLists {
+
+    static final int MAGIC = 0x4D52454D;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int TEXT_FIELDS = 9;
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final int k;
+    private final long ratingsOffset;
+    private final long metadataOffset;
+    private final long contentOffset;
+    private final LongBuffer[] tableMovieIds = new LongBuffer[Context.COUNT];
+    private final DoubleBuffer[] tableScores = new DoubleBuffer[Context.COUNT];
+    private final IntBuffer[] tableCounts = new IntBuffer[Context.COUNT];
+    private final IntBuffer[] tableRows = new IntBuffer[Context.COUNT];
+
+    private MappedModel(Path file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a model file: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported model version " + buffer.getInt(4) + ": " + file);
+        }
+        long payloadLength = buffer.getLong(16);
+        if (payloadLength != buffer.capacity() - HEADER_SIZE) {
+            throw new IOException("Truncated model file: " + file);
+        }
+        k = buffer.getInt(24);
+        ratingsOffset = buffer.getLong(32);
+        metadataOffset = buffer.getLong(48);
+        contentOffset = buffer.getLong(56);
+
+        int position = (int) buffer.getLong(40) + 8;
+        for (int context = 0; context < Context.COUNT; context++) {
+            int rows = buffer.getInt(position);
+            position += 8;
+            tableMovieIds[context] = slice(position, rows * 8).asLongBuffer();
+            position += rows * 8;
+            tableScores[context] = slice(position, rows * k * 8).asDoubleBuffer();
+            position += rows * k * 8;
+            tableCounts[context] = slice(position, rows * 4).asIntBuffer();
+            position += rows * 4;
+            tableRows[context] = slice(position, rows * k * 4).asIntBuffer();
+            position = align(position + rows * k * 4);
+        }
+    }
+
+    /**
+     * Maps the model file read-only.
+     *
+     * @throws IOException if the file is not a model of this version or is truncated
+     */
+    public static MappedModel open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Model files over 2 GB are not supported: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedModel(file, buffer);
+        }
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * CRC32 of everything after the header, which identifies the model the file holds.
+     */
+    public long checksum() {
+        return buffer.getLong(8);
+    }
+
+    /**
+     * Checks the payload against the checksum of the header. This reads the whole file, so it is
+     * left to the caller to run it off the path of the requests.
+     *
+     * @throws IOException if the file is corrupted
+     */
+    public void verify() throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(slice(HEADER_SIZE, buffer.capacity() - HEADER_SIZE));
+        if (crc.getValue() != checksum()) {
+            throw new IOException("Corrupted model file, checksum mismatch: " + file);
+        }
+    }
+
+    @Override
+    public int k() {
+        return k;
+    }
+
+    @Override
+    public int neighbours(Context context, long movieId, int max, long[] movieIds, double[] scores, int offset) {
+        LongBuffer ids = tableMovieIds[context.index()];
+        int row = binarySearch(ids, movieId);
+        if (row < 0) {
+            return 0;
+        }
+        DoubleBuffer tableScores = this.tableScores[context.index()];
+        IntBuffer rows = tableRows[context.index()];
+        int count = Math.min(max, tableCounts[context.index()].get(row));
+        for (int rank = 0; rank < count; rank++) {
+            movieIds[offset + rank] = ids.get(rows.get(row * k + rank));
+            scores[offset + rank] = tableScores.get(row * k + rank);
+        }
+        return count;
+    }
+
+    /**
+     * Decodes all ratings, grouped by movie id.
+     */
+    public List<Rating> ratings() {
+        int position = (int) ratingsOffset;
+        int movies = buffer.getInt(position);
+        int entries = buffer.getInt(position + 4);
+        position += 8;
+        LongBuffer movieIds = slice(position, movies * 8).asLongBuffer();
+        position += movies * 8;
+        IntBuffer rowPointers = slice(position, (movies + 1) * 4).asIntBuffer();
+        position = align(position + (movies + 1) * 4);
+        DoubleBuffer values = slice(position, entries * 8).asDoubleBuffer();
+        position += entries * 8;
+        IntBuffer userIds = slice(position, entries * 4).asIntBuffer();
+        position += entries * 4;
+        ByteBuffer contexts = slice(position, entries);
+
+        List<Rating> ratings = new ArrayList<>(entries);
+        List<Context> all = Context.all();
+        for (int row = 0; row < movies; row++) {
+            for (int p = rowPointers.get(row); p < rowPointers.get(row + 1); p++) {
+                ratings.add(new Rating(userIds.get(p), movieIds.get(row), values.get(p), all.get(contexts.get(p))));
+            }
+        }
+        return ratings;
+    }
+
+    /**
+     * The movie catalogue. Only the ids and titles are decoded here, the other fields of a movie
+     * on its first access.
+     */
+    public MovieCatalog catalog() {
+        int position = (int) metadataOffset;
+        int movies = buffer.getInt(position);
+        int strings = buffer.getInt(position + 4);
+        position += 8;
+        long[] movieIds = new long[movies];
+        slice(position, movies * 8).asLongBuffer().get(movieIds);
+        position += movies * 8;
+        DoubleBuffer imdbScores = slice(position, movies * 8).asDoubleBuffer();
+        position += movies * 8;
+        IntBuffer stringIds = slice(position, movies * TEXT_FIELDS * 4).asIntBuffer();
+        position += movies * TEXT_FIELDS * 4;
+        IntBuffer stringOffsets = slice(position, (strings + 1) * 4).asIntBuffer();
+        position += (strings + 1) * 4;
+
+        Dictionary dictionary = new Dictionary(stringOffsets, position);
+        List<String> titles = new ArrayList<>(movies);
+        for (int row = 0; row < movies; row++) {
+            titles.add(dictionary.get(stringIds.get(row * TEXT_FIELDS)));
+        }
+        return new MovieCatalog(new Movies(movieIds, imdbScores, stringIds, dictionary), movieIds, titles);
+    }
+
+    /**
+     * Content-based recommendations over the content neighbours of the file, for the movies of a
+     * new {@link #catalog()}.
+     */
+    public ContentRecommender content() {
+        int position = (int) contentOffset;
+        int neighbours = buffer.getInt(position);
+        int movies = buffer.getInt(position + 4);
+        position += 8;
+        DoubleBuffer scores = slice(position, movies * neighbours * 8).asDoubleBuffer();
+        position += movies * neighbours * 8;
+        IntBuffer counts = slice(position, movies * 4).asIntBuffer();
+        position += movies * 4;
+        IntBuffer rows = slice(position, movies * neighbours * 4).asIntBuffer();
+        position += movies * neighbours * 4;
+        ByteBuffer[] contextMovies = new ByteBuffer[Context.COUNT];
+        for (int context = 0; context < Context.COUNT; context++) {
+            contextMovies[context] = slice(position, movies);
+            position += movies;
+        }
+        return new ContentRecommender(catalog(), neighbours, rows, scores, counts, contextMovies);
+    }
+
+    private ByteBuffer slice(int position, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.limit(position + length);
+        return view.slice();
+    }
+
+    private static int binarySearch(LongBuffer ids, long movieId) {
+        int low = 0;
+        int high = ids.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long id = ids.get(middle);
+            if (id < movieId) {
+                low = middle + 1;
+            } else if (id > movieId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private static int align(int position) {
+        return (position + 7) & ~7;
+    }
+
+    /**
+     * The strings of the metadata, decoded from UTF-8 on every access.
+     */
+    private final class Dictionary {
+
+        private final IntBuffer offsets;
+        private final int position;
+
+        Dictionary(IntBuffer offsets, int position) {
+            this.offsets = offsets;
+            this.position = position;
+        }
+
+        /**
+         * The string of the id, null for -1.
+         */
+        String get(int id) {
+            if (id < 0) {
+                return null;
+            }
+            int start = offsets.get(id);
+            return StandardCharsets.UTF_8.decode(slice(position + start, offsets.get(id + 1) - start)).toString();
+        }
+    }
+
+    /**
+     * The movies of the catalogue by row, each decoded once, on its first access.
+     */
+    private static final class Movies extends AbstractList<MovieMetadata> implements RandomAccess {
+
+        private final long[] movieIds;
+        private final DoubleBuffer imdbScores;
+        private final IntBuffer stringIds;
+        private final Dictionary dictionary;
+        private final AtomicReferenceArray<MovieMetadata> decoded;
+
+        Movies(long[] movieIds, DoubleBuffer imdbScores, IntBuffer stringIds, Dictionary dictionary) {
+            this.movieIds = movieIds;
+            this.imdbScores = imdbScores;
+            this.stringIds = stringIds;
+            this.dictionary = dictionary;
+            decoded = new AtomicReferenceArray<>(movieIds.length);
+        }
+
+        @Override
+        public int size() {
+            return movieIds.length;
+        }
+
+        @Override
+        public MovieMetadata get(int row) {
+            MovieMetadata movie = decoded.get(row);
+            if (movie == null) {
+                // Threads racing on a movie decode equal copies, any of them is kept.
+                String[] fields = new String[TEXT_FIELDS];
+                for (int field = 0; field < TEXT_FIELDS; field++) {
+                    fields[field] = dictionary.get(stringIds.get(row * TEXT_FIELDS + field));
+                }
+                movie = new MovieMetadata(movieIds[row], fields[0], fields[1], fields[2], fields[3], fields[4],
+                        fields[5], fields[6], fields[7], fields[8], imdbScores.get(row));
+                decoded.set(row, movie);
+            }
+            return movie;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes the binary model read by {@link MappedModel}.
+ *
+ * Layout, big-endian, every section and array of longs or doubles aligned on 8 bytes:
+ * <pre>
+ * header   magic, version, CRC32 of everything after the header, payload length, k,
+ *          offsets of the four sections
+ * ratings  CSR of all ratings by movie: movie ids, row pointers, values, user ids, contexts
+ * tables   per context: movie ids, neighbour scores, neighbour counts, neighbour rows
+ * metadata movie ids, IMDb scores, string ids of the text fields, string dictionary (UTF-8)
+ * content  content neighbours by catalogue row: scores, counts, rows; per context, whether
+ *          every movie was rated in a matching context
+ * </pre>
+ */
+public final class ModelWriter {
+
+    private ModelWriter() {
+    }
+
+    /**
+     * Builds the model from ratings.txt and filtered_metadata.csv:
+     * {@code ModelWriter <ratings.txt> <filtered_metadata.csv> <model file>}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: ModelWriter <ratings.txt> <filtered_metadata.csv> <model file>");
+            System.exit(2);
+        }
+        List<Rating> ratings = RatingsLoader.loadRatingsTxt(Paths.get(args[0]));
+        MovieCatalog catalog = MovieCatalog.loadCsv(Paths.get(args[1]));
+        long start = System.nanoTime();
+        SimilarityIndex index = SimilarityIndex.build(ratings);
+        System.out.printf("Built the similarity tables in %.0f ms on %d threads%n",
+                (System.nanoTime() - start) / 1e6, ForkJoinPool.commonPool().getParallelism());
+        start = System.nanoTime();
+        ContentRecommender content = new ContentRecommender(catalog, ratings);
+        System.out.printf("Built the content neighbours in %.0f ms%n", (System.nanoTime() - start) / 1e6);
+        write(Paths.get(args[2]), ratings, catalog, index, content);
+    }
+
+    /**
+     * Writes the model to a temporary file first, then moves it in place, so that a model being
+     * mapped by a running engine is never modified.
+     */
+    public static void write(Path file, List<Rating> ratings, MovieCatalog catalog, SimilarityIndex index,
+                             ContentRecommender content) throws IOException {
+        if (content.catalog() != catalog) {
+            throw new IllegalArgumentException("The content neighbours are not those of the catalogue");
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        long[] sections = new long[4];
+        long payloadLength;
+        try (FileOutputStream stream = new FileOutputStream(tmp.toFile())) {
+            stream.write(new byte[MappedModel.HEADER_SIZE]);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(stream, crc)));
+            sections[0] = MappedModel.HEADER_SIZE + out.size();
+            writeRatings(out, ratings);
+            sections[1] = MappedModel.HEADER_SIZE + out.size();
+            writeTables(out, index);
+            sections[2] = MappedModel.HEADER_SIZE + out.size();
+            writeMetadata(out, catalog);
+            sections[3] = MappedModel.HEADER_SIZE + out.size();
+            writeContent(out, content);
+            out.flush();
+            payloadLength = out.size();
+        }
+        try (RandomAccessFile header = new RandomAccessFile(tmp.toFile(), "rw")) {
+            header.writeInt(MappedModel.MAGIC);
+            header.writeInt(MappedModel.VERSION);
+            header.writeLong(crc.getValue());
+            header.writeLong(payloadLength);
+            header.writeInt(index.k());
+            header.writeInt(0);
+            for (long section : sections) {
+                header.writeLong(section);
+            }
+            header.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeRatings(DataOutputStream out, List<Rating> ratings) throws IOException {
+        // Stable sort by movie, keeping every movie's ratings in their original order.
+        Rating[] sorted = ratings.toArray(new Rating[0]);
+        Arrays.sort(sorted, (a, b) -> Long.compare(a.getMovieId(), b.getMovieId()));
+        List<Long> movieIds = new ArrayList<>();
+        List<Integer> rowPointers = new ArrayList<>();
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i].getMovieId() != sorted[i - 1].getMovieId()) {
+                movieIds.add(sorted[i].getMovieId());
+                rowPointers.add(i);
+            }
+        }
+        rowPointers.add(sorted.length);
+
+        out.writeInt(movieIds.size());
+        out.writeInt(sorted.length);
+        for (long movieId : movieIds) {
+            out.writeLong(movieId);
+        }
+        for (int pointer : rowPointers) {
+            out.writeInt(pointer);
+        }
+        align(out);
+        for (Rating rating : sorted) {
+            out.writeDouble(rating.getValue());
+        }
+        for (Rating rating : sorted) {
+            out.writeInt(rating.getUserId());
+        }
+        for (Rating rating : sorted) {
+            out.writeByte(rating.getContext().index());
+        }
+        align(out);
+    }
+
+    private static void writeTables(DataOutputStream out, SimilarityIndex index) throws IOException {
+        int k = index.k();
+        out.writeInt(Context.COUNT);
+        out.writeInt(k);
+        for (Context context : Context.all()) {
+            SimilarityTable table = index.table(context);
+            out.writeInt(table.rows());
+            out.writeInt(0);
+            for (int row = 0; row < table.rows(); row++) {
+                out.writeLong(table.movieIdAt(row));
+            }
+            for (int row = 0; row < table.rows(); row++) {
+                for (int rank = 0; rank < k; rank++) {
+                    out.writeDouble(rank < table.neighbourCount(row) ? table.scoreAt(row, rank) : 0);
+                }
+            }
+            for (int row = 0; row < table.rows(); row++) {
+                out.writeInt(table.neighbourCount(row));
+            }
+            for (int row = 0; row < table.rows(); row++) {
+                for (int rank = 0; rank < k; rank++) {
+                    out.writeInt(rank < table.neighbourCount(row) ? table.neighbourAt(row, rank) : -1);
+                }
+            }
+            align(out);
+        }
+    }
+
+    private static void writeMetadata(DataOutputStream out, MovieCatalog catalog) throws IOException {
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> dictionary = new HashMap<>();
+        int[] stringIds = new int[catalog.size() * MappedModel.TEXT_FIELDS];
+        for (int row = 0; row < catalog.size(); row++) {
+            MovieMetadata movie = catalog.movieAt(row);
+            String[] fields = {
+                    movie.getTitle(), movie.getDirector(), movie.getGenres(), movie.getActor1(),
+                    movie.getActor2(), movie.getActor3(), movie.getPlotKeywords(), movie.getLanguage(),
+                    movie.getCountry()
+            };
+            for (int field = 0; field < fields.length; field++) {
+                String value = fields[field];
+                Integer id = -1;
+                if (value != null) {
+                    id = dictionary.get(value);
+                    if (id == null) {
+                        id = strings.size();
+                        dictionary.put(value, id);
+                        strings.add(value);
+                    }
+                }
+                stringIds[row * MappedModel.TEXT_FIELDS + field] = id;
+            }
+        }
+
+        out.writeInt(catalog.size());
+        out.writeInt(strings.size());
+        for (MovieMetadata movie : catalog.movies()) {
+            out.writeLong(movie.getMovieId());
+        }
+        for (MovieMetadata movie : catalog.movies()) {
+            out.writeDouble(movie.getImdbScore());
+        }
+        for (int id : stringIds) {
+            out.writeInt(id);
+        }
+        byte[][] encoded = new byte[strings.size()][];
+        int offset = 0;
+        out.writeInt(0);
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            offset += encoded[i].length;
+            out.writeInt(offset);
+        }
+        for (byte[] bytes : encoded) {
+            out.write(bytes);
+        }
+        align(out);
+    }
+
+    private static void writeContent(DataOutputStream out, ContentRecommender content) throws IOException {
+        int neighbours = content.neighbours();
+        int movies = content.catalog().size();
+        out.writeInt(neighbours);
+        out.writeInt(movies);
+        for (int row = 0; row < movies; row++) {
+            for (int rank = 0; rank < neighbours; rank++) {
+                out.writeDouble(rank < content.neighbourCount(row) ? content.scoreAt(row, rank) : 0);
+            }
+        }
+        for (int row = 0; row < movies; row++) {
+            out.writeInt(content.neighbourCount(row));
+        }
+        for (int row = 0; row < movies; row++) {
+            for (int rank = 0; rank < neighbours; rank++) {
+                out.writeInt(rank < content.neighbourCount(row) ? content.neighbourAt(row, rank) : -1);
+            }
+        }
+        for (Context context : Context.all()) {
+            for (int row = 0; row < movies; row++) {
+                out.writeByte(content.ratedIn(context, row) ? 1 : 0);
+            }
+        }
+        align(out);
+    }
+
+    private static void align(DataOutputStream out) throws IOException {
+        while ((MappedModel.HEADER_SIZE + out.size()) % 8 != 0) {
+            out.writeByte(0);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The movies known to the recommender, the Java counterpart of MovieRepository in
+ * recommender/movie_repository.py.
+ *
+ * Movies keep the order of the metadata file, which also defines their catalogue row. The
+ * catalogue of a {@link MappedModel} decodes the metadata of a movie on first access only.
+ */
+public final class MovieCatalog {
+
+    private final List<MovieMetadata> movies;
+    private final long[] movieIds;
+    private final List<String> titles;
+    private final LongIntHashMap rowsById;
+    private final Map<String, Integer> rowsByTitle = new HashMap<>();
+
+    public MovieCatalog(List<MovieMetadata> movies) {
+        this(new ArrayList<>(movies), movieIds(movies), titles(movies));
+    }
+
+    /**
+     * @param movies   the movies by row, not copied
+     * @param movieIds the id of every movie, by row
+     * @param titles   the title of every movie, by row
+     */
+    MovieCatalog(List<MovieMetadata> movies, long[] movieIds, List<String> titles) {
+        this.movies = Collections.unmodifiableList(movies);
+        this.movieIds = movieIds;
+        this.titles = Collections.unmodifiableList(titles);
+        rowsById = new LongIntHashMap(movieIds.length);
+        for (int row = 0; row < movieIds.length; row++) {
+            rowsById.put(movieIds[row], row);
+            rowsByTitle.putIfAbsent(titles.get(row), row);
+        }
+    }
+
+    /**
+     * Reads filtered_metadata.csv, e.g.
+     * {@code 0109830,Forrest Gump,Robert Zemeckis,Comedy|Drama,Tom Hanks,...,English,USA,8.8}.
+     * Empty values are read as empty strings, or NaN for the score.
+     */
+    public static MovieCatalog loadCsv(Path file) throws IOException {
+        List<MovieMetadata> movies = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine(); // header
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                List<String> fields = splitCsv(line);
+                if (fields.size() != 11) {
+                    throw new IOException(file + ":" + lineNumber + ": expected 11 fields, found " + fields.size());
+                }
+                try {
+                    String score = fields.get(10);
+                    movies.add(new MovieMetadata(Long.parseLong(fields.get(0)), fields.get(1), fields.get(2),
+                            fields.get(3), fields.get(4), fields.get(5), fields.get(6), fields.get(7),
+                            fields.get(8), fields.get(9), score.isEmpty() ? Double.NaN : Double.parseDouble(score)));
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return new MovieCatalog(movies);
+    }
+
+    public int size() {
+        return movieIds.length;
+    }
+
+    public List<MovieMetadata> movies() {
+        return movies;
+    }
+
+    public MovieMetadata movieAt(int row) {
+        return movies.get(row);
+    }
+
+    public long movieIdAt(int row) {
+        return movieIds[row];
+    }
+
+    /**
+     * The titles of the movies, by row.
+     */
+    public List<String> titles() {
+        return titles;
+    }
+
+    /**
+     * Catalogue row of the movie, or -1 if it is unknown.
+     */
+    public int rowOf(long movieId) {
+        return rowsById.get(movieId);
+    }
+
+    /**
+     * The movie, or null if it is unknown.
+     */
+    public MovieMetadata byId(long movieId) {
+        int row = rowOf(movieId);
+        return row >= 0 ? movies.get(row) : null;
+    }
+
+    /**
+     * The movie with exactly this title, or null.
+     */
+    public MovieMetadata byTitle(String title) {
+        Integer row = rowsByTitle.get(title);
+        return row != null ? movies.get(row) : null;
+    }
+
+    /**
+     * The known movies among the ids, in the order of the ids.
+     */
+    public List<MovieMetadata> byIds(long[] movieIds) {
+        List<MovieMetadata> found = new ArrayList<>(movieIds.length);
+        for (long movieId : movieIds) {
+            MovieMetadata movie = byId(movieId);
+            if (movie != null) {
+                found.add(movie);
+            }
+        }
+        return found;
+    }
+
+    private static long[] movieIds(List<MovieMetadata> movies) {
+        long[] movieIds = new long[movies.size()];
+        for (int row = 0; row < movieIds.length; row++) {
+            movieIds[row] = movies.get(row).getMovieId();
+        }
+        return movieIds;
+    }
+
+    private static List<String> titles(List<MovieMetadata> movies) {
+        List<String> titles = new ArrayList<>(movies.size());
+        for (MovieMetadata movie : movies) {
+            titles.add(movie.getTitle());
+        }
+        return titles;
+    }
+
+    /**
+     * Splits a CSV line, honouring double-quoted fields.
+     */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,79 @@
+package pl.edu.agh.movierecommender.core;
+
+/**
+ * Metadata of a movie, one row of filtered_metadata.csv.
+ */
+public final class MovieMetadata {
+
+    private final long movieId;
+    private final String title;
+    private final String director;
+    private final String genres;
+    private final String actor1;
+    private final String actor2;
+    private final String actor3;
+    private final String plotKeywords;
+    private final String language;
+    private final String country;
+    private final double imdbScore;
+
+    public MovieMetadata(long movieId, String title, String director, String genres,
+                         String actor1, String actor2, String actor3, String plotKeywords,
+                         String language, String country, double imdbScore) {
+        this.movieId = movieId;
+        this.title = title;
+        this.director = director;
+        this.genres = genres;
+        this.actor1 = actor1;
+        this.actor2 = actor2;
+        this.actor3 = actor3;
+        this.plotKeywords = plotKeywords;
+        this.language = language;
+        this.country = country;
+        this.imdbScore = imdbScore;
+    }
+
+    public long getMovieId() {
+        return movieId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDirector() {
+        return director;
+    }
+
+    public String getGenres() {
+        return genres;
+    }
+
+    public String getActor1() {
+        return actor1;
+    }
+
+    public String getActor2() {
+        return actor2;
+    }
+
+    public String getActor3() {
+        return actor3;
+    }
+
+    public String getPlotKeywords() {
+        return plotKeywords;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public double getImdbScore() {
+        return imdbScore;
+    }
+}
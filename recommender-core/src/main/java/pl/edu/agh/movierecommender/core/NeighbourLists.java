@@ -0,0 +1,21 @@
+package pl.edu.agh.movierecommender.core;
+
+/**
+ * Precomputed item-item neighbour lists of every context, as served to {@link ItemKnnRecommender}.
+ */
+public interface NeighbourLists {
+
+    /**
+     * Neighbours kept per movie, the movie itself included.
+     */
+    int k();
+
+    /**
+     * Copies up to max neighbours of the movie in the context, best first, to
+     * {@code movieIds}/{@code scores} starting at {@code offset}. Equal scores are ordered by
+     * movie id.
+     *
+     * @return the number of neighbours copied, 0 if nobody rated the movie in the context
+     */
+    int neighbours(Context context, long movieId, int max, long[] movieIds, double[] scores, int offset);
+}
@@ -0,0 +1,35 @@
+package pl.edu.agh.movierecommender.core;
+
+/**
+ * A single rating of a movie by a user in a given context.
+ */
+public final class Rating {
+
+    private final int userId;
+    private final long movieId;
+    private final double value;
+    private final Context context;
+
+    public Rating(int userId, long movieId, double value, Context context) {
+        this.userId = userId;
+        this.movieId = movieId;
+        this.value = value;
+        this.context = context;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public long getMovieId() {
+        return movieId;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+}
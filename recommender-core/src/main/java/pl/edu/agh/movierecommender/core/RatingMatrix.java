@@ -0,0 +1,160 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Sparse item x user rating matrix with precomputed row norms, the equivalent of the pandas
+ * pivot table (movie_id rows, user_id columns, missing ratings as 0) of the Python recommender.
+ *
+ * Rows are ordered by movie id and columns by user id. Repeated ratings of a movie by the same
+ * user are averaged, like pivot_table does.
+ */
+public final class RatingMatrix {
+
+    private final long[] movieIds;
+    private final int[] userIds;
+    private final SparseMatrix itemUser;
+    private final CosineSimilarity cosine;
+
+    private RatingMatrix(long[] movieIds, int[] userIds, SparseMatrix itemUser) {
+        this.movieIds = movieIds;
+        this.userIds = userIds;
+        this.itemUser = itemUser;
+        this.cosine = new CosineSimilarity(itemUser);
+    }
+
+    /**
+     * Builds the matrix of the ratings used for recommendations in the given context.
+     */
+    public static RatingMatrix forContext(List<Rating> ratings, Context context) {
+        return build(ratings, rating -> context.matches(rating.getContext()));
+    }
+
+    public static RatingMatrix build(List<Rating> ratings, Predicate<Rating> filter) {
+        int count = 0;
+        long[] rawMovies = new long[ratings.size()];
+        int[] rawUsers = new int[ratings.size()];
+        double[] rawValues = new double[ratings.size()];
+        for (Rating rating : ratings) {
+            if (filter.test(rating)) {
+                rawMovies[count] = rating.getMovieId();
+                rawUsers[count] = rating.getUserId();
+                rawValues[count] = rating.getValue();
+                count++;
+            }
+        }
+        long[] movieIds = distinct(Arrays.copyOf(rawMovies, count));
+        int[] userIds = distinct(Arrays.copyOf(rawUsers, count));
+
+        // Bucket the ratings by row.
+        int[] rowPointers = new int[movieIds.length + 1];
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = Arrays.binarySearch(movieIds, rawMovies[i]);
+            rowPointers[rows[i] + 1]++;
+        }
+        for (int row = 0; row < movieIds.length; row++) {
+            rowPointers[row + 1] += rowPointers[row];
+        }
+        int[] next = rowPointers.clone();
+        int[] bucketColumns = new int[count];
+        double[] bucketValues = new double[count];
+        for (int i = 0; i < count; i++) {
+            int position = next[rows[i]]++;
+            bucketColumns[position] = Arrays.binarySearch(userIds, rawUsers[i]);
+            bucketValues[position] = rawValues[i];
+        }
+
+        // Sort every row by column and average the repeated cells.
+        int[] columnIndices = new int[count];
+        double[] values = new double[count];
+        int[] pointers = new int[movieIds.length + 1];
+        int size = 0;
+        for (int row = 0; row < movieIds.length; row++) {
+            int start = rowPointers[row];
+            int end = rowPointers[row + 1];
+            long[] order = new long[end - start];
+            for (int p = start; p < end; p++) {
+                order[p - start] = ((long) bucketColumns[p] << 32) | (p - start);
+            }
+            Arrays.sort(order);
+            int i = 0;
+            while (i < order.length) {
+                int column = (int) (order[i] >>> 32);
+                double sum = 0;
+                int cells = 0;
+                while (i < order.length && (int) (order[i] >>> 32) == column) {
+                    sum += bucketValues[start + (int) order[i]];
+                    cells++;
+                    i++;
+                }
+                columnIndices[size] = column;
+                values[size] = sum / cells;
+                size++;
+            }
+            pointers[row + 1] = size;
+        }
+        SparseMatrix itemUser = new SparseMatrix(movieIds.length, userIds.length, pointers,
+                Arrays.copyOf(columnIndices, size), Arrays.copyOf(values, size));
+        return new RatingMatrix(movieIds, userIds, itemUser);
+    }
+
+    public int rows() {
+        return movieIds.length;
+    }
+
+    public int columns() {
+        return userIds.length;
+    }
+
+    /**
+     * Row of the movie, or -1 if nobody rated it in this matrix.
+     */
+    public int rowOf(long movieId) {
+        int row = Arrays.binarySearch(movieIds, movieId);
+        return row >= 0 ? row : -1;
+    }
+
+    public long movieIdAt(int row) {
+        return movieIds[row];
+    }
+
+    public SparseMatrix itemUser() {
+        return itemUser;
+    }
+
+    public double norm(int row) {
+        return cosine.norm(row);
+    }
+
+    /**
+     * Fills {@code out} with the cosine similarity of the movie's ratings to every row's.
+     */
+    public void similarities(int row, double[] out) {
+        cosine.similarities(row, out);
+    }
+
+    private static long[] distinct(long[] values) {
+        Arrays.sort(values);
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                values[size++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    private static int[] distinct(int[] values) {
+        Arrays.sort(values);
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                values[size++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, size);
+    }
+}
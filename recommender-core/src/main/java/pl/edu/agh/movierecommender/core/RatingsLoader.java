@@ -0,0 +1,101 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the DePaulMovie rating files bundled in recommender/data/depaulmovie.
+ */
+public final class RatingsLoader {
+
+    private RatingsLoader() {
+    }
+
+    /**
+     * Reads train.csv, e.g. {@code 1098,tt0266543,3,0,1,1,0,1,0,0}, where the context is
+     * one-hot encoded as weekday, weekend, cinema, home, alone, family, partner.
+     */
+    public static List<Rating> loadTrainCsv(Path file) throws IOException {
+        List<Rating> ratings = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine(); // header
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = split(line, 10, file, lineNumber);
+                try {
+                    Context.Time time = flag(fields[3]) ? Context.Time.WEEKDAY : Context.Time.WEEKEND;
+                    Context.Location location = flag(fields[5]) ? Context.Location.CINEMA : Context.Location.HOME;
+                    Context.Companion companion = flag(fields[7]) ? Context.Companion.ALONE
+                            : flag(fields[8]) ? Context.Companion.FAMILY : Context.Companion.PARTNER;
+                    ratings.add(new Rating(Integer.parseInt(fields[0]), parseImdbId(fields[1]),
+                            Double.parseDouble(fields[2]), Context.of(time, location, companion)));
+                } catch (IllegalArgumentException e) {
+                    throw malformed(file, lineNumber, e);
+                }
+            }
+        }
+        return ratings;
+    }
+
+    /**
+     * Reads ratings.txt, e.g. {@code 1003,0454876,1,Weekday,Cinema,Alone}, the file the Python
+     * server loads.
+     */
+    public static List<Rating> loadRatingsTxt(Path file) throws IOException {
+        List<Rating> ratings = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine(); // header
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = split(line, 6, file, lineNumber);
+                try {
+                    ratings.add(new Rating(Integer.parseInt(fields[0]), Long.parseLong(fields[1]),
+                            Double.parseDouble(fields[2]), Context.of(fields[3], fields[4], fields[5])));
+                } catch (IllegalArgumentException e) {
+                    throw malformed(file, lineNumber, e);
+                }
+            }
+        }
+        return ratings;
+    }
+
+    /**
+     * Parses an IMDb id such as "tt0266543" into the numeric movie id used by the server.
+     */
+    public static long parseImdbId(String imdbId) {
+        return Long.parseLong(imdbId.startsWith("tt") ? imdbId.substring(2) : imdbId);
+    }
+
+    private static boolean flag(String field) {
+        return "1".equals(field);
+    }
+
+    private static String[] split(String line, int expectedFields, Path file, int lineNumber) throws IOException {
+        String[] fields = line.split(",", -1);
+        if (fields.length != expectedFields) {
+            throw new IOException(file + ":" + lineNumber + ": expected " + expectedFields
+                    + " fields, found " + fields.length);
+        }
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fields[i].trim();
+        }
+        return fields;
+    }
+
+    private static IOException malformed(Path file, int lineNumber, IllegalArgumentException cause) {
+        return new IOException(file + ":" + lineNumber + ": " + cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,28 @@
+package pl.edu.agh.movierecommender.core;
+
+/**
+ * A recommended movie with its score; higher scores are better recommendations.
+ */
+public final class ScoredMovie {
+
+    private final long movieId;
+    private final double score;
+
+    public ScoredMovie(long movieId, double score) {
+        this.movieId = movieId;
+        this.score = score;
+    }
+
+    public long getMovieId() {
+        return movieId;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return movieId + " (" + score + ")";
+    }
+}
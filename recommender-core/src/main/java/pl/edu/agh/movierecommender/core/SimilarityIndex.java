@@ -0,0 +1,88 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * One {@link SimilarityTable} per context, built ahead of time.
+ *
+ * The Python recommender filters the ratings, pivots them and refits its model on every
+ * request. There are only {@link Context#COUNT} contexts, so all of that is done once here and
+ * a request only looks up the favourites' neighbours, whatever the number of ratings.
+ */
+public final class SimilarityIndex implements NeighbourLists {
+
+    /**
+     * Neighbours kept per movie, the movie itself included; answers requests up to n = 50.
+     */
+    public static final int DEFAULT_K = 51;
+
+    private final SimilarityTable[] tables;
+    private final int k;
+
+    SimilarityIndex(SimilarityTable[] tables, int k) {
+        this.tables = tables;
+        this.k = k;
+    }
+
+    public static SimilarityIndex build(List<Rating> ratings) {
+        return build(ratings, DEFAULT_K);
+    }
+
+    public static SimilarityIndex build(List<Rating> ratings, int k) {
+        return build(ratings, k, null);
+    }
+
+    /**
+     * Builds the tables with approximate neighbours, see
+     * {@link SimilarityTable#build(RatingMatrix, int, HnswIndex.Parameters)}, in the common
+     * fork-join pool.
+     */
+    public static SimilarityIndex build(List<Rating> ratings, int k, HnswIndex.Parameters parameters) {
+        return build(ratings, k, parameters, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds the tables in the pool, a task per context each forking a task per block of rows.
+     * The tables are the same whatever the parallelism of the pool.
+     */
+    public static SimilarityIndex build(List<Rating> ratings, int k, HnswIndex.Parameters parameters,
+                                        ForkJoinPool pool) {
+        SimilarityTable[] tables = new SimilarityTable[Context.COUNT];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(Context.COUNT);
+        for (Context context : Context.all()) {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                tables[context.index()] = SimilarityTable.buildForked(
+                        RatingMatrix.forContext(ratings, context), k, parameters);
+            }));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        return new SimilarityIndex(tables, k);
+    }
+
+    public SimilarityTable table(Context context) {
+        return tables[context.index()];
+    }
+
+    @Override
+    public int k() {
+        return k;
+    }
+
+    @Override
+    public int neighbours(Context context, long movieId, int max, long[] movieIds, double[] scores, int offset) {
+        SimilarityTable table = tables[context.index()];
+        int row = table.rowOf(movieId);
+        if (row < 0) {
+            return 0;
+        }
+        int count = Math.min(max, table.neighbourCount(row));
+        for (int rank = 0; rank < count; rank++) {
+            movieIds[offset + rank] = table.movieIdAt(table.neighbourAt(row, rank));
+            scores[offset + rank] = table.scoreAt(row, rank);
+        }
+        return count;
+    }
+}
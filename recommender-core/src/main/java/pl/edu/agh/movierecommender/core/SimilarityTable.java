@@ -0,0 +1,163 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Item-item top-k cosine similarities of one context's rating matrix.
+ *
+ * Every movie keeps its k most similar movies, best first, itself included: that is what the
+ * Python recommender asks its NearestNeighbors model for. Rows are ordered by movie id.
+ */
+public final class SimilarityTable {
+
+    /**
+     * Rows per fork-join task, enough for a task to outweigh its scheduling.
+     */
+    static final int BLOCK_ROWS = 64;
+
+    private final long[] movieIds;
+    private final int k;
+    private final int[] neighbourRows;
+    private final double[] neighbourScores;
+    private final int[] neighbourCounts;
+
+    SimilarityTable(long[] movieIds, int k, int[] neighbourRows, double[] neighbourScores, int[] neighbourCounts) {
+        this.movieIds = movieIds;
+        this.k = k;
+        this.neighbourRows = neighbourRows;
+        this.neighbourScores = neighbourScores;
+        this.neighbourCounts = neighbourCounts;
+    }
+
+    public static SimilarityTable build(RatingMatrix matrix, int k) {
+        return build(matrix, k, null);
+    }
+
+    /**
+     * Builds the table with the neighbours found through an {@link HnswIndex} with the given
+     * parameters, or by comparing every pair of movies if they are null. Approximate lists may
+     * miss some of the exact neighbours and are not padded with unrelated movies.
+     */
+    public static SimilarityTable build(RatingMatrix matrix, int k, HnswIndex.Parameters parameters) {
+        Builder builder = new Builder(matrix, k, parameters);
+        builder.fill(0, matrix.rows());
+        return builder.table();
+    }
+
+    /**
+     * Same as {@link #build(RatingMatrix, int, HnswIndex.Parameters)}, forking a task per block
+     * of {@link #BLOCK_ROWS} rows in the fork-join pool running the caller, which must be one.
+     * Every row only writes its own neighbours, computed the same way by whatever thread, so
+     * the table does not depend on the parallelism.
+     */
+    static SimilarityTable buildForked(RatingMatrix matrix, int k, HnswIndex.Parameters parameters) {
+        Builder builder = new Builder(matrix, k, parameters);
+        new RowBlock(builder, 0, matrix.rows()).invoke();
+        return builder.table();
+    }
+
+    private static final class Builder {
+
+        final RatingMatrix matrix;
+        final int k;
+        final HnswIndex hnsw;
+        final long[] movieIds;
+        final int[] neighbourRows;
+        final double[] neighbourScores;
+        final int[] neighbourCounts;
+
+        Builder(RatingMatrix matrix, int k, HnswIndex.Parameters parameters) {
+            int rows = matrix.rows();
+            this.matrix = matrix;
+            this.k = k;
+            // The graph is built sequentially, its insertion order matters; queries are parallel.
+            this.hnsw = parameters != null ? HnswIndex.build(matrix.itemUser(), parameters) : null;
+            movieIds = new long[rows];
+            neighbourRows = new int[rows * k];
+            neighbourScores = new double[rows * k];
+            neighbourCounts = new int[rows];
+        }
+
+        void fill(int from, int to) {
+            double[] similarities = hnsw == null ? new double[matrix.rows()] : null;
+            for (int row = from; row < to; row++) {
+                movieIds[row] = matrix.movieIdAt(row);
+                if (hnsw != null) {
+                    neighbourCounts[row] = hnsw.nearest(row, k, -1, neighbourRows, neighbourScores, row * k);
+                } else {
+                    matrix.similarities(row, similarities);
+                    neighbourCounts[row] = TopN.select(similarities, matrix.rows(), k, -1,
+                            neighbourRows, neighbourScores, row * k);
+                }
+            }
+        }
+
+        SimilarityTable table() {
+            return new SimilarityTable(movieIds, k, neighbourRows, neighbourScores, neighbourCounts);
+        }
+    }
+
+    private static final class RowBlock extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Builder builder;
+        private final int from;
+        private final int to;
+
+        RowBlock(Builder builder, int from, int to) {
+            this.builder = builder;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BLOCK_ROWS) {
+                builder.fill(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RowBlock(builder, from, middle), new RowBlock(builder, middle, to));
+            }
+        }
+    }
+
+    public int rows() {
+        return movieIds.length;
+    }
+
+    /**
+     * Neighbours kept per movie.
+     */
+    public int k() {
+        return k;
+    }
+
+    /**
+     * Row of the movie, or -1 if nobody rated it in this context.
+     */
+    public int rowOf(long movieId) {
+        int row = Arrays.binarySearch(movieIds, movieId);
+        return row >= 0 ? row : -1;
+    }
+
+    public long movieIdAt(int row) {
+        return movieIds[row];
+    }
+
+    public int neighbourCount(int row) {
+        return neighbourCounts[row];
+    }
+
+    /**
+     * Row of the movie's neighbour of the given rank, 0 being the most similar.
+     */
+    public int neighbourAt(int row, int rank) {
+        return neighbourRows[row * k + rank];
+    }
+
+    public double scoreAt(int row, int rank) {
+        return neighbourScores[row * k + rank];
+    }
+}
@@ -0,0 +1,109 @@
+package pl.edu.agh.movierecommender.core;
+
+/**
+ * Immutable sparse matrix in compressed sparse row (CSR) form, backed by primitive arrays.
+ *
+ * The entries of row {@code r} are at positions {@code [rowStart(r), rowEnd(r))} of
+ * {@link #columnIndices()} and {@link #values()}, ordered by column.
+ */
+public final class SparseMatrix {
+
+    private final int rows;
+    private final int columns;
+    private final int[] rowPointers;
+    private final int[] columnIndices;
+    private final double[] values;
+
+    public SparseMatrix(int rows, int columns, int[] rowPointers, int[] columnIndices, double[] values) {
+        if (rowPointers.length != rows + 1 || columnIndices.length != values.length
+                || rowPointers[rows] != values.length) {
+            throw new IllegalArgumentException("Inconsistent CSR arrays");
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.rowPointers = rowPointers;
+        this.columnIndices = columnIndices;
+        this.values = values;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    public int nonZeros() {
+        return values.length;
+    }
+
+    public int rowStart(int row) {
+        return rowPointers[row];
+    }
+
+    public int rowEnd(int row) {
+        return rowPointers[row + 1];
+    }
+
+    int[] rowPointers() {
+        return rowPointers;
+    }
+
+    int[] columnIndices() {
+        return columnIndices;
+    }
+
+    double[] values() {
+        return values;
+    }
+
+    public int columnAt(int position) {
+        return columnIndices[position];
+    }
+
+    public double valueAt(int position) {
+        return values[position];
+    }
+
+    /**
+     * Euclidean norm of every row.
+     */
+    public double[] rowNorms() {
+        double[] norms = new double[rows];
+        for (int row = 0; row < rows; row++) {
+            double sum = 0;
+            for (int p = rowPointers[row]; p < rowPointers[row + 1]; p++) {
+                sum += values[p] * values[p];
+            }
+            norms[row] = Math.sqrt(sum);
+        }
+        return norms;
+    }
+
+    /**
+     * The transposed matrix, still in CSR form (i.e. this matrix in CSC form).
+     */
+    public SparseMatrix transpose() {
+        int[] counts = new int[columns + 1];
+        for (int column : columnIndices) {
+            counts[column + 1]++;
+        }
+        for (int column = 0; column < columns; column++) {
+            counts[column + 1] += counts[column];
+        }
+        int[] transposedPointers = counts.clone();
+        int[] next = counts;
+        int[] transposedColumns = new int[values.length];
+        double[] transposedValues = new double[values.length];
+        // Rows are visited in order, so every transposed row ends up sorted by column.
+        for (int row = 0; row < rows; row++) {
+            for (int p = rowPointers[row]; p < rowPointers[row + 1]; p++) {
+                int position = next[columnIndices[p]]++;
+                transposedColumns[position] = row;
+                transposedValues[position] = values[p];
+            }
+        }
+        return new SparseMatrix(columns, rows, transposedPointers, transposedColumns, transposedValues);
+    }
+}
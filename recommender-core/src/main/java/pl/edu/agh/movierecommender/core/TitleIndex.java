@@ -0,0 +1,421 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Typeahead index of movie titles, used by the app to suggest titles as the user types and by
+ * the server to resolve the titles it receives, so that both agree on what matches.
+ *
+ * Titles and queries are normalised: lower case, apostrophes dropped, any other run of
+ * characters that are not letters or digits turned into a single space. A query matches first
+ * the titles with a word starting with it ("gum" finds "Forrest Gump"), through the word starts
+ * of all titles sorted by the text that follows them; whole-title prefixes and shorter titles
+ * rank first. If there are none, titles containing most of the query's trigrams are suggested
+ * instead, so that a typo ("forest gump") still finds the title.
+ *
+ * Immutable once built and safe to query from any thread; a query allocates little besides its
+ * result.
+ */
+public final class TitleIndex {
+
+    /**
+     * Share of the query's trigrams a title must contain to be suggested for a typo.
+     */
+    static final double MIN_TRIGRAM_CONTAINMENT = 0.5;
+    /**
+     * Share of the titles above which a trigram is too common to count for a typo, unless it is
+     * held by no more than {@link #MIN_COMMON_TRIGRAM_TITLES}.
+     */
+    static final double MAX_TRIGRAM_SHARE = 0.02;
+    static final int MIN_COMMON_TRIGRAM_TITLES = 64;
+    /**
+     * Prefix matches looked at per query, bounding the work of very short queries.
+     */
+    private static final int MAX_PREFIX_SCAN = 256;
+
+    private final String[] titles;
+    private final String[] normalized;
+
+    // Every word start, as title and offset, sorted by the normalised text from there on.
+    private final int[] wordTitles;
+    private final int[] wordOffsets;
+
+    // Distinct trigrams of every title: sorted trigrams, then the titles of each one.
+    private final long[] grams;
+    private final int[] gramStarts;
+    private final int[] gramTitles;
+
+    private final ThreadLocal<Scratch> scratch;
+
+    public TitleIndex(List<String> titles) {
+        int count = titles.size();
+        this.titles = titles.toArray(new String[0]);
+        normalized = new String[count];
+        int words = 0;
+        for (int t = 0; t < count; t++) {
+            normalized[t] = normalize(this.titles[t]);
+            for (int i = 0; i < normalized[t].length(); i++) {
+                if (i == 0 || normalized[t].charAt(i - 1) == ' ') {
+                    words++;
+                }
+            }
+        }
+
+        // Word starts as their text followed by a \0, which sorts before any character, and
+        // their title number, so that plain strings sort by text then by title.
+        String[] keys = new String[words];
+        int entry = 0;
+        for (int t = 0; t < count; t++) {
+            String title = normalized[t];
+            for (int i = 0; i < title.length(); i++) {
+                if (i == 0 || title.charAt(i - 1) == ' ') {
+                    keys[entry++] = title.substring(i) + '\0' + (char) (t >>> 16) + (char) t;
+                }
+            }
+        }
+        Arrays.sort(keys);
+        wordTitles = new int[words];
+        wordOffsets = new int[words];
+        for (int i = 0; i < words; i++) {
+            String key = keys[i];
+            int t = (key.charAt(key.length() - 2) << 16) | key.charAt(key.length() - 1);
+            wordTitles[i] = t;
+            wordOffsets[i] = normalized[t].length() - (key.length() - 3);
+        }
+
+        // Trigrams are numbered in sorted order, then every title is listed under each of its
+        // trigrams, in title order.
+        int[] titleGramStarts = new int[count + 1];
+        long[] titleGrams = new long[0];
+        for (int t = 0; t < count; t++) {
+            long[] distinct = trigrams(normalized[t]);
+            int start = titleGramStarts[t];
+            if (start + distinct.length > titleGrams.length) {
+                titleGrams = Arrays.copyOf(titleGrams, Math.max(2 * titleGrams.length, start + distinct.length));
+            }
+            System.arraycopy(distinct, 0, titleGrams, start, distinct.length);
+            titleGramStarts[t + 1] = start + distinct.length;
+        }
+        int pairs = titleGramStarts[count];
+        grams = distinct(Arrays.copyOf(titleGrams, pairs));
+        int[] gramIds = new int[pairs];
+        gramStarts = new int[grams.length + 1];
+        for (int p = 0; p < pairs; p++) {
+            gramIds[p] = Arrays.binarySearch(grams, titleGrams[p]);
+            gramStarts[gramIds[p] + 1]++;
+        }
+        for (int g = 0; g < grams.length; g++) {
+            gramStarts[g + 1] += gramStarts[g];
+        }
+        gramTitles = new int[pairs];
+        int[] next = Arrays.copyOf(gramStarts, grams.length);
+        for (int t = 0; t < count; t++) {
+            for (int p = titleGramStarts[t]; p < titleGramStarts[t + 1]; p++) {
+                gramTitles[next[gramIds[p]]++] = t;
+            }
+        }
+
+        scratch = ThreadLocal.withInitial(() -> new Scratch(count));
+    }
+
+    public int size() {
+        return titles.length;
+    }
+
+    /**
+     * Up to {@code limit} titles matching what the user typed, best first.
+     */
+    public List<String> suggest(String query, int limit) {
+        String q = normalize(query);
+        if (q.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        Scratch s = scratch.get();
+        int stamp = s.nextStamp();
+        Ranking ranking = s.ranking;
+        ranking.reset(limit);
+
+        // Word prefixes: rank 0 for a whole-title prefix, 1 for a later word. Failing those,
+        // trigram matches ranked by the trigrams they lack.
+        int scanned = 0;
+        for (int i = lowerBound(q); i < wordTitles.length && scanned < MAX_PREFIX_SCAN; i++, scanned++) {
+            int t = wordTitles[i];
+            if (!normalized[t].startsWith(q, wordOffsets[i])) {
+                break;
+            }
+            if (s.seen[t] != stamp) {
+                s.seen[t] = stamp;
+                ranking.offer(t, wordOffsets[i] == 0 ? 0 : 1, normalized[t].length());
+            } else if (wordOffsets[i] == 0) {
+                ranking.improve(t, 0, normalized[t].length());
+            }
+        }
+
+        if (ranking.size == 0) {
+            addTrigramMatches(q, s, stamp, ranking);
+        }
+
+        List<String> suggestions = new ArrayList<>(ranking.size);
+        for (int i = 0; i < ranking.size; i++) {
+            suggestions.add(titles[ranking.titles[i]]);
+        }
+        return suggestions;
+    }
+
+    /**
+     * The indexed title the user meant, or null: the exact title if indexed, else the first
+     * title equal to it once normalised.
+     */
+    public String resolve(String title) {
+        String q = normalize(title);
+        if (q.isEmpty()) {
+            return null;
+        }
+        String found = null;
+        int foundTitle = Integer.MAX_VALUE;
+        // Entries equal to the query come first among those starting with it.
+        for (int i = lowerBound(q); i < wordTitles.length; i++) {
+            int t = wordTitles[i];
+            if (compare(normalized[t], wordOffsets[i], q, 0) != 0) {
+                break;
+            }
+            if (wordOffsets[i] == 0) {
+                if (titles[t].equals(title)) {
+                    return titles[t];
+                }
+                if (t < foundTitle) {
+                    found = titles[t];
+                    foundTitle = t;
+                }
+            }
+        }
+        return found;
+    }
+
+    private void addTrigramMatches(String q, Scratch s, int stamp, Ranking ranking) {
+        long[] queryGrams = trigrams(q);
+        if (q.length() < 3 || queryGrams.length == 0) {
+            return;
+        }
+        // Trigrams held by many titles say little about which one was meant and cost the most
+        // to count, so they are left out unless the query has no others.
+        int common = Math.max(MIN_COMMON_TRIGRAM_TITLES, (int) (MAX_TRIGRAM_SHARE * titles.length));
+        int[] lists = new int[queryGrams.length];
+        int used = 0;
+        int missing = 0;
+        for (long gram : queryGrams) {
+            int g = Arrays.binarySearch(grams, gram);
+            if (g < 0) {
+                missing++;
+            } else if (gramStarts[g + 1] - gramStarts[g] <= common) {
+                lists[used++] = g;
+            }
+        }
+        if (used == 0) {
+            for (long gram : queryGrams) {
+                int g = Arrays.binarySearch(grams, gram);
+                if (g >= 0) {
+                    lists[used++] = g;
+                }
+            }
+        }
+        int considered = used + missing;
+
+        int touched = 0;
+        for (int l = 0; l < used; l++) {
+            int g = lists[l];
+            for (int p = gramStarts[g]; p < gramStarts[g + 1]; p++) {
+                int t = gramTitles[p];
+                if (s.counted[t] != stamp) {
+                    s.counted[t] = stamp;
+                    s.counts[t] = 0;
+                    s.touched[touched++] = t;
+                }
+                s.counts[t]++;
+            }
+        }
+        int needed = (int) Math.ceil(MIN_TRIGRAM_CONTAINMENT * considered);
+        for (int i = 0; i < touched; i++) {
+            int t = s.touched[i];
+            if (s.counts[t] >= needed) {
+                ranking.offer(t, considered - s.counts[t], normalized[t].length());
+            }
+        }
+    }
+
+    /**
+     * First word entry whose text is not before the query.
+     */
+    private int lowerBound(String q) {
+        int low = 0;
+        int high = wordTitles.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(normalized[wordTitles[middle]], wordOffsets[middle], q, 0) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int compare(String a, int offsetA, String b, int offsetB) {
+        int lengthA = a.length() - offsetA;
+        int lengthB = b.length() - offsetB;
+        for (int i = 0; i < Math.min(lengthA, lengthB); i++) {
+            char x = a.charAt(offsetA + i);
+            char y = b.charAt(offsetB + i);
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return lengthA - lengthB;
+    }
+
+    static String normalize(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                out.append(c);
+                space = false;
+            } else if (c != '\'' && c != '\u2019' && !space) {
+                out.append(' ');
+                space = true;
+            }
+        }
+        int length = out.length();
+        if (length > 0 && out.charAt(length - 1) == ' ') {
+            out.setLength(length - 1);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Distinct trigrams of the normalised text padded with a space at both ends, sorted.
+     */
+    private static long[] trigrams(String text) {
+        if (text.isEmpty()) {
+            return new long[0];
+        }
+        String padded = " " + text + " ";
+        long[] result = new long[padded.length() - 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        return distinct(result);
+    }
+
+    private static long[] distinct(long[] values) {
+        Arrays.sort(values);
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                values[size++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * The best titles by rank, then by normalised length, then by position in the index.
+     */
+    private static final class Ranking {
+
+        int[] titles = new int[8];
+        int[] ranks = new int[8];
+        int[] lengths = new int[8];
+        int size;
+        int limit;
+
+        void reset(int limit) {
+            this.limit = limit;
+            if (titles.length < limit) {
+                titles = new int[limit];
+                ranks = new int[limit];
+                lengths = new int[limit];
+            }
+            size = 0;
+        }
+
+        void offer(int title, int rank, int length) {
+            int i = size;
+            while (i > 0 && before(title, rank, length, i - 1)) {
+                i--;
+            }
+            if (i >= limit) {
+                return;
+            }
+            int last = Math.min(size, limit - 1);
+            System.arraycopy(titles, i, titles, i + 1, last - i);
+            System.arraycopy(ranks, i, ranks, i + 1, last - i);
+            System.arraycopy(lengths, i, lengths, i + 1, last - i);
+            titles[i] = title;
+            ranks[i] = rank;
+            lengths[i] = length;
+            if (size < limit) {
+                size++;
+            }
+        }
+
+        /**
+         * Offers again a title offered before with a worse rank, which it may still hold.
+         */
+        void improve(int title, int rank, int length) {
+            for (int i = 0; i < size; i++) {
+                if (titles[i] == title) {
+                    if (rank >= ranks[i]) {
+                        return;
+                    }
+                    System.arraycopy(titles, i + 1, titles, i, size - i - 1);
+                    System.arraycopy(ranks, i + 1, ranks, i, size - i - 1);
+                    System.arraycopy(lengths, i + 1, lengths, i, size - i - 1);
+                    size--;
+                    break;
+                }
+            }
+            offer(title, rank, length);
+        }
+
+        private boolean before(int title, int rank, int length, int i) {
+            if (rank != ranks[i]) {
+                return rank < ranks[i];
+            }
+            if (length != lengths[i]) {
+                return length < lengths[i];
+            }
+            return title < titles[i];
+        }
+    }
+
+    private static final class Scratch {
+
+        final int[] seen;
+        final int[] counted;
+        final int[] counts;
+        final int[] touched;
+        final Ranking ranking = new Ranking();
+        int stamp;
+
+        Scratch(int titles) {
+            seen = new int[titles];
+            counted = new int[titles];
+            counts = new int[titles];
+            touched = new int[titles];
+        }
+
+        int nextStamp() {
+            if (++stamp == 0) {
+                Arrays.fill(seen, 0);
+                Arrays.fill(counted, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package pl.edu.agh.movierecommender.core;
+
+/**
+ * Selection of the best scored rows.
+ */
+final class TopN {
+
+    private TopN() {
+    }
+
+    /**
+     * Writes the k best rows by score to {@code rows}/{@code topScores} starting at
+     * {@code offset}, best first, lower rows first on ties.
+     *
+     * @param skipRow row never selected, or -1
+     * @return the number of rows written, at most k
+     */
+    static int select(double[] scores, int length, int k, int skipRow, int[] rows, double[] topScores, int offset) {
+        int size = 0;
+        for (int row = 0; row < length; row++) {
+            double score = scores[row];
+            if (row == skipRow || k == 0 || (size == k && score <= topScores[offset + k - 1])) {
+                continue;
+            }
+            int i = Math.min(size, k - 1);
+            while (i > 0 && topScores[offset + i - 1] < score) {
+                rows[offset + i] = rows[offset + i - 1];
+                topScores[offset + i] = topScores[offset + i - 1];
+                i--;
+            }
+            rows[offset + i] = row;
+            topScores[offset + i] = score;
+            if (size < k) {
+                size++;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,103 @@
+package pl.edu.agh.movierecommender.core;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HnswIndexTest {
+
+    private static final int MOVIES = 5000;
+    private static final int K = 10;
+    private static final int QUERIES = 300;
+    // Measured 0.999 at efSearch 10 and 1.0 at the default 50.
+    private static final double MIN_RECALL = 0.95;
+
+    private static SparseMatrix matrix;
+    private static int[] queries;
+    private static double[] exactScores;
+
+    @BeforeClass
+    public static void setUp() {
+        matrix = Synthetic.contentVectors(MOVIES, 7);
+        queries = new Random(11).ints(QUERIES, 0, MOVIES).toArray();
+
+        // Exact neighbours, the query itself excluded.
+        CosineSimilarity cosine = new CosineSimilarity(matrix);
+        double[] similarities = new double[MOVIES];
+        int[] exactRows = new int[QUERIES * K];
+        exactScores = new double[QUERIES * K];
+        for (int q = 0; q < QUERIES; q++) {
+            cosine.similarities(queries[q], similarities);
+            TopN.select(similarities, MOVIES, K, queries[q], exactRows, exactScores, q * K);
+        }
+    }
+
+    @Test
+    public void findsNeighboursAsGoodAsBruteForce() {
+        HnswIndex index = HnswIndex.build(matrix, HnswIndex.Parameters.DEFAULT);
+
+        for (int ef : new int[]{10, HnswIndex.Parameters.DEFAULT.getEfSearch()}) {
+            double recall = recall(index, ef);
+            assertTrue("recall@" + K + " at efSearch " + ef + " is " + recall, recall >= MIN_RECALL);
+        }
+    }
+
+    @Test
+    public void skipsTheQueryRow() {
+        HnswIndex index = HnswIndex.build(matrix, HnswIndex.Parameters.DEFAULT);
+        int[] rows = new int[K];
+        double[] scores = new double[K];
+
+        for (int query : queries) {
+            int found = index.nearest(query, K, query, rows, scores, 0);
+            for (int i = 0; i < found; i++) {
+                assertTrue(rows[i] != query);
+            }
+        }
+    }
+
+    @Test
+    public void buildsTheSameGraphForTheSameSeed() {
+        HnswIndex.Parameters parameters = new HnswIndex.Parameters(8, 50, 25, 3);
+        HnswIndex first = HnswIndex.build(matrix, parameters);
+        HnswIndex second = HnswIndex.build(matrix, parameters);
+        int[] firstRows = new int[K];
+        int[] secondRows = new int[K];
+        double[] scores = new double[K];
+
+        for (int query : queries) {
+            int found = first.nearest(query, K, query, firstRows, scores, 0);
+            second.nearest(query, K, query, secondRows, scores, 0);
+            assertArrayEquals(Arrays.copyOf(firstRows, found), Arrays.copyOf(secondRows, found));
+        }
+    }
+
+    /**
+     * Share of the exact neighbours found, neighbours tied with the exact k-th score being as
+     * good as the exact ones.
+     */
+    private static double recall(HnswIndex index, int ef) {
+        int[] rows = new int[K];
+        double[] scores = new double[K];
+        int hits = 0;
+        int expected = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            int found = index.nearest(queries[q], K, queries[q], ef, rows, scores, 0);
+            double threshold = exactScores[q * K + K - 1];
+            for (int i = 0; i < K; i++) {
+                if (exactScores[q * K + i] > 0) {
+                    expected++;
+                    if (i < found && scores[i] >= Math.min(exactScores[q * K + i], threshold) - 1e-12) {
+                        hits++;
+                    }
+                }
+            }
+        }
+        return expected == 0 ? 1 : (double) hits / expected;
+    }
+}
@@ -0,0 +1,59 @@
+package pl.edu.agh.movierecommender.core;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ItemKnnRecommenderTest {
+
+    /**
+     * Recommendations of KnnItemCollaborativeRecommender on the bundled data, written by
+     * recommender/golden_recommendations.py.
+     */
+    private static final String GOLDEN = "item_knn_golden.txt";
+
+    @Test
+    public void ranksLikeThePythonRecommender() throws IOException {
+        // The tests run from the recommender directory, like server.py.
+        ItemKnnRecommender recommender = new ItemKnnRecommender(
+                RatingsLoader.loadRatingsTxt(Paths.get("data/depaulmovie/ratings.txt")));
+        int checked = 0;
+        try (BufferedReader golden = new BufferedReader(new InputStreamReader(
+                getClass().getResourceAsStream(GOLDEN), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = golden.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                String[] favourites = fields[0].split(",");
+                long[] favouriteIds = new long[favourites.length];
+                for (int i = 0; i < favourites.length; i++) {
+                    favouriteIds[i] = Long.parseLong(favourites[i]);
+                }
+                Context context = Context.of(fields[1], fields[2], fields[3]);
+                String[] expected = fields[4].split(" ");
+
+                List<ScoredMovie> actual = recommender.topK(favouriteIds, context, expected.length);
+
+                String list = fields[0] + " " + context;
+                assertEquals(list, expected.length, actual.size());
+                for (int rank = 0; rank < expected.length; rank++) {
+                    String[] movie = expected[rank].split(":");
+                    assertEquals(list + ", rank " + rank, Long.parseLong(movie[0]), actual.get(rank).getMovieId());
+                    assertEquals(list + ", rank " + rank, Double.parseDouble(movie[1]),
+                            1 - actual.get(rank).getScore(), 1e-9);
+                }
+                checked++;
+            }
+        }
+        assertEquals(4 * Context.COUNT, checked);
+    }
+}
@@ -0,0 +1,68 @@
+package pl.edu.agh.movierecommender.core;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+
+public class LiveSimilarityIndexTest {
+
+    private static final int MOVIES = 300;
+
+    private final List<Rating> ratings = Synthetic.ratings(MOVIES, 200, 6000, 5);
+
+    @Test
+    public void addsRatingsLikeARebuild() {
+        LiveSimilarityIndex live = new LiveSimilarityIndex(ratings.subList(0, ratings.size() / 2));
+
+        for (Rating rating : ratings.subList(ratings.size() / 2, ratings.size())) {
+            live.add(rating);
+        }
+
+        assertSameLists(SimilarityIndex.build(ratings), live, MOVIES);
+        assertEquals(0, live.rebuild());
+        assertSameLists(SimilarityIndex.build(ratings), live, MOVIES);
+    }
+
+    @Test
+    public void comparesARebuildWithTheListsOfItsSnapshot() throws InterruptedException {
+        LiveSimilarityIndex live = new LiveSimilarityIndex(ratings.subList(0, ratings.size() / 2));
+        AtomicReference<Integer> mismatches = new AtomicReference<>(0);
+        Thread rebuilder = new Thread(() -> {
+            for (int i = 0; i < 5; i++) {
+                mismatches.accumulateAndGet(live.rebuild(), Integer::sum);
+            }
+        });
+
+        // Ratings keep coming in while the lists are rebuilt.
+        rebuilder.start();
+        for (Rating rating : ratings.subList(ratings.size() / 2, ratings.size())) {
+            live.add(rating);
+        }
+        rebuilder.join();
+
+        assertEquals(0, (int) mismatches.get());
+        assertSameLists(SimilarityIndex.build(ratings), live, MOVIES);
+    }
+
+    static void assertSameLists(NeighbourLists expected, NeighbourLists actual, int movies) {
+        assertEquals(expected.k(), actual.k());
+        long[] expectedIds = new long[expected.k()];
+        double[] expectedScores = new double[expected.k()];
+        long[] actualIds = new long[actual.k()];
+        double[] actualScores = new double[actual.k()];
+        for (Context context : Context.all()) {
+            for (long movieId = 0; movieId < movies; movieId++) {
+                int count = expected.neighbours(context, movieId, expected.k(), expectedIds, expectedScores, 0);
+                String list = context + ", movie " + movieId;
+                assertEquals(list, count, actual.neighbours(context, movieId, actual.k(), actualIds, actualScores, 0));
+                for (int i = 0; i < count; i++) {
+                    assertEquals(list, expectedIds[i], actualIds[i]);
+                    assertEquals(list, expectedScores[i], actualScores[i], 1e-9);
+                }
+            }
+        }
+    }
+}
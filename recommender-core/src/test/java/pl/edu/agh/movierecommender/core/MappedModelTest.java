@@ -0,0 +1,124 @@
+package pl.edu.agh.movierecommender.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class MappedModelTest {
+
+    private static final int MOVIES = 200;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Rating> ratings = Synthetic.ratings(MOVIES, 150, 4000, 11);
+
+    @Test
+    public void readsWhatTheWriterWrote() throws IOException {
+        SimilarityIndex index = SimilarityIndex.build(ratings);
+        MovieCatalog catalog = catalog();
+        ContentRecommender content = new ContentRecommender(catalog, ratings);
+        Path file = folder.getRoot().toPath().resolve("model.bin");
+
+        ModelWriter.write(file, ratings, catalog, index, content);
+        MappedModel model = MappedModel.open(file);
+        model.verify();
+
+        LiveSimilarityIndexTest.assertSameLists(index, model, MOVIES);
+        // Grouped by movie, each movie's ratings in their original order.
+        List<Rating> expected = new ArrayList<>(ratings);
+        expected.sort(Comparator.comparingLong(Rating::getMovieId));
+        List<Rating> actual = model.ratings();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getUserId(), actual.get(i).getUserId());
+            assertEquals(expected.get(i).getMovieId(), actual.get(i).getMovieId());
+            assertEquals(expected.get(i).getValue(), actual.get(i).getValue(), 0);
+            assertEquals(expected.get(i).getContext(), actual.get(i).getContext());
+        }
+        MovieCatalog read = model.catalog();
+        assertEquals(catalog.size(), read.size());
+        for (int row = 0; row < catalog.size(); row++) {
+            MovieMetadata movie = catalog.movieAt(row);
+            assertEquals(movie.getMovieId(), read.movieAt(row).getMovieId());
+            assertEquals(movie.getTitle(), read.movieAt(row).getTitle());
+            assertEquals(movie.getGenres(), read.movieAt(row).getGenres());
+            assertEquals(movie.getImdbScore(), read.movieAt(row).getImdbScore(), 0);
+        }
+        assertNull(read.movieAt(1).getDirector());
+        assertEquals(catalog.titles(), read.titles());
+        assertEquals(catalog.movieAt(7).getActor3(), read.byTitle("Movie 7").getActor3());
+        ContentRecommender mapped = model.content();
+        for (Context context : Context.all()) {
+            for (long[] favourites : new long[][]{{3}, {0, 5, 42}, {199, 17}}) {
+                List<ScoredMovie> expectedPage = content.page(favourites, context, 5, 20);
+                List<ScoredMovie> actualPage = mapped.page(favourites, context, 5, 20);
+                assertEquals(expectedPage.size(), actualPage.size());
+                for (int i = 0; i < expectedPage.size(); i++) {
+                    assertEquals(expectedPage.get(i).getMovieId(), actualPage.get(i).getMovieId());
+                    assertEquals(expectedPage.get(i).getScore(), actualPage.get(i).getScore(), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rejectsACorruptedFile() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("model.bin");
+        write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+
+        try {
+            MappedModel.open(file).verify();
+            fail("Corrupted model verified");
+        } catch (IOException expected) {
+            // checksum mismatch
+        }
+    }
+
+    @Test
+    public void rejectsATruncatedFile() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("model.bin");
+        write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 8));
+
+        try {
+            MappedModel.open(file);
+            fail("Truncated model opened");
+        } catch (IOException expected) {
+            // payload shorter than its header says
+        }
+    }
+
+    private void write(Path file) throws IOException {
+        MovieCatalog catalog = catalog();
+        ModelWriter.write(file, ratings, catalog, SimilarityIndex.build(ratings),
+                new ContentRecommender(catalog, ratings));
+    }
+
+    private static MovieCatalog catalog() {
+        List<MovieMetadata> movies = new ArrayList<>();
+        for (int movie = 0; movie < MOVIES; movie++) {
+            // Odd movies miss their director, some strings repeat across movies.
+            movies.add(new MovieMetadata(movie, "Movie " + movie, movie % 2 == 0 ? "Director " + movie / 10 : null,
+                    movie % 3 == 0 ? "Comedy|Drama" : "Thriller", "Actor " + movie % 7, "Actor " + movie % 11,
+                    "\u017baneta " + movie, "plot|keywords", "English", "USA", movie / 20.0));
+        }
+        return new MovieCatalog(movies);
+    }
+}
@@ -0,0 +1,64 @@
+package pl.edu.agh.movierecommender.core;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class SimilarityIndexTest {
+
+    private static List<Rating> ratings;
+
+    @BeforeClass
+    public static void setUp() {
+        ratings = Synthetic.ratings(400, 500, 20000, 7);
+    }
+
+    @Test
+    public void buildsTheSameTablesInParallel() {
+        SimilarityIndex single = build(1, null);
+
+        for (int threads : new int[]{2, 3, 8}) {
+            assertSameTables(single, build(threads, null));
+        }
+    }
+
+    @Test
+    public void buildsTheSameApproximateTablesInParallel() {
+        SimilarityIndex single = build(1, HnswIndex.Parameters.DEFAULT);
+
+        for (int threads : new int[]{2, 8}) {
+            assertSameTables(single, build(threads, HnswIndex.Parameters.DEFAULT));
+        }
+    }
+
+    private static SimilarityIndex build(int threads, HnswIndex.Parameters parameters) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return SimilarityIndex.build(ratings, SimilarityIndex.DEFAULT_K, parameters, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSameTables(SimilarityIndex expected, SimilarityIndex actual) {
+        for (Context context : Context.all()) {
+            SimilarityTable x = expected.table(context);
+            SimilarityTable y = actual.table(context);
+            assertEquals(context.toString(), x.rows(), y.rows());
+            for (int row = 0; row < x.rows(); row++) {
+                assertEquals(x.movieIdAt(row), y.movieIdAt(row));
+                assertEquals(x.neighbourCount(row), y.neighbourCount(row));
+                for (int rank = 0; rank < x.neighbourCount(row); rank++) {
+                    assertEquals(x.neighbourAt(row, rank), y.neighbourAt(row, rank));
+                    // Bit for bit, as every row is computed by the same code on any thread.
+                    assertEquals(Double.doubleToLongBits(x.scoreAt(row, rank)),
+                            Double.doubleToLongBits(y.scoreAt(row, rank)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package pl.edu.agh.movierecommender.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic data shaped like the engine's inputs, for the tests and, larger, for
+ * the JMH benchmarks, which share this class.
+ */
+final class Synthetic {
+
+    private static final int COMMON_FEATURES = 30;
+    private static final int GENRES = 10;
+
+    private Synthetic() {
+    }
+
+    /**
+     * Content vectors of movies drawing most of their features from the core of one of many
+     * topics, like casts and keywords cluster real movies, a few from the features of the
+     * topic's genre, shared by many topics, and the rest at random.
+     */
+    static SparseMatrix contentVectors(int movies, long seed) {
+        Random random = new Random(seed);
+        int topics = Math.max(1, movies / 50);
+        int featuresPerMovie = 20;
+        int[] rowPointers = new int[movies + 1];
+        int[] columns = new int[movies * featuresPerMovie];
+        double[] values = new double[columns.length];
+        int size = 0;
+        for (int movie = 0; movie < movies; movie++) {
+            int topic = random.nextInt(topics);
+            int[] features = new int[featuresPerMovie];
+            for (int i = 0; i < featuresPerMovie; i++) {
+                if (i < 12) {
+                    features[i] = (COMMON_FEATURES + topic * 20 + random.nextInt(20)) % ContentFeatures.DIMENSIONS;
+                } else if (i < 15) {
+                    features[i] = (topic % GENRES) * (COMMON_FEATURES / GENRES) + random.nextInt(COMMON_FEATURES / GENRES);
+                } else {
+                    features[i] = random.nextInt(ContentFeatures.DIMENSIONS);
+                }
+            }
+            Arrays.sort(features);
+            for (int i = 0; i < featuresPerMovie; i++) {
+                if (i > 0 && features[i] == features[i - 1]) {
+                    values[size - 1]++;
+                } else {
+                    columns[size] = features[i];
+                    values[size] = 1;
+                    size++;
+                }
+            }
+            rowPointers[movie + 1] = size;
+        }
+        return new SparseMatrix(movies, ContentFeatures.DIMENSIONS, rowPointers,
+                Arrays.copyOf(columns, size), Arrays.copyOf(values, size));
+    }
+
+    /**
+     * Ratings of 1 to 5 in random contexts, a few popular movies getting most of them.
+     */
+    static List<Rating> ratings(int movies, int users, int count, long seed) {
+        Random random = new Random(seed);
+        List<Context> contexts = Context.all();
+        List<Rating> ratings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double skew = random.nextDouble();
+            ratings.add(new Rating(random.nextInt(users), (long) (skew * skew * movies), 1 + random.nextInt(5),
+                    contexts.get(random.nextInt(contexts.size()))));
+        }
+        return ratings;
+    }
+}
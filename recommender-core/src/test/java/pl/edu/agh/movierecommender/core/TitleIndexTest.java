@@ -0,0 +1,87 @@
+package pl.edu.agh.movierecommender.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TitleIndexTest {
+
+    private final TitleIndex index = new TitleIndex(Arrays.asList(
+            "Forrest Gump",
+            "The Matrix",
+            "The Matrix Reloaded",
+            "Matrix of Leadership",
+            "Schindler's List",
+            "WALL\u00b7E",
+            "Gumball",
+            "The Lord of the Rings: The Fellowship of the Ring",
+            "Am\u00e9lie"));
+
+    @Test
+    public void normalizesCaseAndPunctuation() {
+        assertEquals("schindlers list", TitleIndex.normalize("Schindler's List"));
+        assertEquals("schindlers list", TitleIndex.normalize("Schindler\u2019s  LIST!"));
+        assertEquals("wall e", TitleIndex.normalize("WALL\u00b7E"));
+        assertEquals("the lord of the rings the fellowship of the ring",
+                TitleIndex.normalize(" The Lord of the Rings: The Fellowship of the Ring "));
+        assertEquals("am\u00e9lie", TitleIndex.normalize("AM\u00c9LIE"));
+        assertEquals("", TitleIndex.normalize("?!"));
+    }
+
+    @Test
+    public void ranksWholeTitlePrefixesFirstThenShorterTitles() {
+        assertEquals(Arrays.asList("Matrix of Leadership", "The Matrix", "The Matrix Reloaded"),
+                index.suggest("matrix", 10));
+        assertEquals(Arrays.asList("The Matrix", "The Matrix Reloaded"), index.suggest("the mat", 10));
+        // "gum" starts the title "Gumball" and a later word of "Forrest Gump".
+        assertEquals(Arrays.asList("Gumball", "Forrest Gump"), index.suggest("gum", 10));
+        assertEquals(Collections.singletonList("Gumball"), index.suggest("gum", 1));
+    }
+
+    @Test
+    public void matchesWordsInsideTitles() {
+        assertEquals(Collections.singletonList("The Lord of the Rings: The Fellowship of the Ring"),
+                index.suggest("fellowship", 10));
+        assertEquals(Collections.singletonList("Schindler's List"), index.suggest("schindlers", 10));
+    }
+
+    @Test
+    public void fallsBackToTrigramsForTypos() {
+        List<String> suggestions = index.suggest("forest gump", 10);
+
+        assertEquals("Forrest Gump", suggestions.get(0));
+        assertEquals(Collections.emptyList(), index.suggest("xyzzy", 10));
+    }
+
+    @Test
+    public void suggestsNothingForAnEmptyQuery() {
+        assertEquals(Collections.emptyList(), index.suggest("  ", 10));
+        assertEquals(Collections.emptyList(), index.suggest("matrix", 0));
+    }
+
+    @Test
+    public void resolvesTitlesIgnoringCaseAndPunctuation() {
+        assertEquals("The Matrix", index.resolve("The Matrix"));
+        assertEquals("The Matrix", index.resolve("the matrix"));
+        assertEquals("Schindler's List", index.resolve("SCHINDLERS LIST"));
+        assertEquals("WALL\u00b7E", index.resolve("wall-e"));
+        // Only whole titles resolve, not prefixes or typos.
+        assertNull(index.resolve("The Matrix Rel"));
+        assertNull(index.resolve("Forest Gump"));
+        assertNull(index.resolve(""));
+    }
+
+    @Test
+    public void resolvesToTheExactTitleBeforeTheFirstNormalisedOne() {
+        TitleIndex duplicates = new TitleIndex(Arrays.asList("Heat", "HEAT!", "heat"));
+
+        assertEquals("heat", duplicates.resolve("heat"));
+        assertEquals("HEAT!", duplicates.resolve("HEAT!"));
+        assertEquals("Heat", duplicates.resolve("heat?"));
+    }
+}
@@ -0,0 +1,123 @@
+package pl.edu.agh.movierecommender.server;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import pl.edu.agh.movierecommender.core.MovieMetadata;
+
+/**
+ * JSON bodies of the API, in the shapes written by server.py.
+ *
+ * Movies are objects with the snake_case fields of the Python MovieMetadata, in the same order;
+ * a missing IMDb score is written as NaN, like Python's json module does.
+ */
+final class Json {
+
+    static final Gson GSON = new Gson();
+    static final Gson PRETTY_GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private Json() {
+    }
+
+    static String movies(List<MovieMetadata> movies) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = newWriter(out)) {
+            writeMovies(writer, movies);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * An object of named movie lists, e.g. {"collab": [...], "content": [...]}.
+     */
+    static String recommendations(Map<String, List<MovieMetadata>> recommendations) {
+        return recommendations(recommendations, null);
+    }
+
+    /**
+     * An object of named movie lists and the cursors of their next pages, e.g.
+     * {"collab": [...], "content": [...], "next": {"collab": "...", "content": null}}; without
+     * "next" if the cursors are null.
+     */
+    static String recommendations(Map<String, List<MovieMetadata>> recommendations, Map<String, String> next) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = newWriter(out)) {
+            writer.beginObject();
+            for (Map.Entry<String, List<MovieMetadata>> entry : recommendations.entrySet()) {
+                writer.name(entry.getKey());
+                writeMovies(writer, entry.getValue());
+            }
+            if (next != null) {
+                writer.name("next");
+                writer.beginObject();
+                for (Map.Entry<String, String> entry : next.entrySet()) {
+                    writer.name(entry.getKey()).value(entry.getValue());
+                }
+                writer.endObject();
+            }
+            writer.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * A page of a recommendation list, {"movies": [...], "next": "..."}; next is null on the
+     * last page.
+     */
+    static String page(List<MovieMetadata> movies, String next) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = newWriter(out)) {
+            writer.beginObject();
+            writer.name("movies");
+            writeMovies(writer, movies);
+            writer.name("next").value(next);
+            writer.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    static String error(String message) {
+        return GSON.toJson(Collections.singletonMap("error", message));
+    }
+
+    private static JsonWriter newWriter(StringWriter out) {
+        JsonWriter writer = new JsonWriter(out);
+        writer.setIndent("  ");
+        // Lenient writers accept NaN.
+        writer.setLenient(true);
+        return writer;
+    }
+
+    private static void writeMovies(JsonWriter writer, List<MovieMetadata> movies) throws IOException {
+        writer.beginArray();
+        for (MovieMetadata movie : movies) {
+            writer.beginObject();
+            writer.name("movie_id").value(movie.getMovieId());
+            writer.name("title").value(movie.getTitle());
+            writer.name("director").value(movie.getDirector());
+            writer.name("genres").value(movie.getGenres());
+            writer.name("actor_1").value(movie.getActor1());
+            writer.name("actor_2").value(movie.getActor2());
+            writer.name("actor_3").value(movie.getActor3());
+            writer.name("plot_keywords").value(movie.getPlotKeywords());
+            writer.name("language").value(movie.getLanguage());
+            writer.name("country").value(movie.getCountry());
+            writer.name("imdb_score").value(movie.getImdbScore());
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+}
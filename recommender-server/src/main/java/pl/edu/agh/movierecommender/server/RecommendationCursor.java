@@ -0,0 +1,82 @@
+package pl.edu.agh.movierecommender.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in a recommendation list, handed to the client as an opaque token to fetch the next
+ * page with.
+ *
+ * A cursor names the list, the offset of the next page and the context, and carries the
+ * version of the recommendations it was issued for, i.e. of the model and the user's
+ * favourites, so a page is never spliced onto a list that has changed meanwhile. Same
+ * encoding as in server.py: "list|offset|time|location|companion|version" in unpadded
+ * URL-safe Base64.
+ */
+final class RecommendationCursor {
+
+    private static final String SEPARATOR = "|";
+    private static final int FIELDS = 6;
+
+    private final String list;
+    private final int offset;
+    private final String time;
+    private final String location;
+    private final String companion;
+    private final String version;
+
+    RecommendationCursor(String list, int offset, String time, String location, String companion,
+                         String version) {
+        this.list = list;
+        this.offset = offset;
+        this.time = time;
+        this.location = location;
+        this.companion = companion;
+        this.version = version;
+    }
+
+    String getList() {
+        return list;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    String getTime() {
+        return time;
+    }
+
+    String getLocation() {
+        return location;
+    }
+
+    String getCompanion() {
+        return companion;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    String encode() {
+        String text = String.join(SEPARATOR, list, Integer.toString(offset), time, location, companion, version);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token is not a cursor
+     */
+    static RecommendationCursor decode(String token) {
+        String text = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        String[] fields = text.split("\\|", -1);
+        if (fields.length != FIELDS) {
+            throw new IllegalArgumentException("Not a cursor: " + token);
+        }
+        int offset = Integer.parseInt(fields[1]);
+        if (offset < 0) {
+            throw new IllegalArgumentException("Not a cursor: " + token);
+        }
+        return new RecommendationCursor(fields[0], offset, fields[2], fields[3], fields[4], fields[5]);
+    }
+}
@@ -0,0 +1,478 @@
+package pl.edu.agh.movierecommender.server;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import pl.edu.agh.movierecommender.core.ContentRecommender;
+import pl.edu.agh.movierecommender.core.Context;
+import pl.edu.agh.movierecommender.core.ItemKnnRecommender;
+import pl.edu.agh.movierecommender.core.MovieCatalog;
+import pl.edu.agh.movierecommender.core.MovieMetadata;
+import pl.edu.agh.movierecommender.core.ScoredMovie;
+import pl.edu.agh.movierecommender.core.TitleIndex;
+
+/**
+ * The API of server.py:
+ * <ul>
+ * <li>{@code GET /?u=username&t=Weekday&loc=Cinema&comp=Alone}: the first 10 "collab" and
+ * "content" recommendations for the user's favourites in the context, with an ETag honouring
+ * If-None-Match; 400 if the user has no favourites. With {@code &n=10}, the first n, and under
+ * "next" the cursors of their next pages, which clients not sending n would fail to parse</li>
+ * <li>{@code GET /more?u=username&cursor=...&n=20}: the next n recommendations of a list, as
+ * {"movies": [...], "next": cursor}, the cursor null after the last page; 410 if the favourites
+ * or the model changed since the cursor was issued</li>
+ * <li>{@code GET /favourites?u=username}: the user's favourite movies</li>
+ * <li>{@code POST /favourites?u=username} with a JSON list of titles: adds the known ones to the
+ * favourites and returns them; 400 if none is known. Titles are resolved through the
+ * {@link TitleIndex} the app suggests them from, so case and punctuation do not matter</li>
+ * <li>{@code GET /titles}: the JSON list of all titles the app builds its {@link TitleIndex}
+ * from, with an ETag honouring If-None-Match</li>
+ * <li>{@code GET /posters/tt0133093.jpg}: the poster of a movie the app has none bundled for</li>
+ * </ul>
+ * Errors are JSON objects with an "error" message. Unlike server.py, missing parameters and
+ * unknown context labels get a 400 rather than a dropped connection. JSON bodies of
+ * {@link #GZIP_MIN_BYTES} or more are gzipped for clients sending {@code Accept-Encoding: gzip},
+ * as OkHttp does.
+ */
+final class RecommendationHandler implements HttpHandler {
+
+    static final int N_RECOMMENDATIONS = 10;
+    static final int MAX_PAGE_SIZE = 50;
+    // Deepest position served; the neighbour lists usually end well before.
+    static final int MAX_RECOMMENDATIONS = 500;
+    static final String COLLAB = "collab";
+    static final String CONTENT = "content";
+    private static final String POSTERS_PATH = "/posters/";
+    private static final String POSTER_FILE_PATTERN = "tt\\d+\\.jpg";
+    // Posters do not change while the server runs.
+    private static final String POSTER_CACHE_CONTROL = "public, max-age=86400";
+    // Smaller bodies are sent as they are, compressing them would save little.
+    static final int GZIP_MIN_BYTES = 512;
+
+    private final ItemKnnRecommender collab;
+    private final ContentRecommender content;
+    private final MovieCatalog catalog;
+    private final TitleIndex titleIndex;
+    private final String titlesJson;
+    private final String titlesEtag;
+    private final UserFavouritesStore users;
+    private final Path posters;
+    private final String modelVersion;
+
+    /**
+     * @param posters directory of the posters, named like tt0133093.jpg
+     */
+    RecommendationHandler(ItemKnnRecommender collab, ContentRecommender content, MovieCatalog catalog,
+                          UserFavouritesStore users, Path posters, String modelVersion) {
+        this.collab = collab;
+        this.content = content;
+        this.catalog = catalog;
+        List<String> titles = catalog.titles();
+        this.titleIndex = new TitleIndex(titles);
+        this.titlesJson = Json.GSON.toJson(titles);
+        this.titlesEtag = etag(titlesJson);
+        this.users = users;
+        this.posters = posters;
+        this.modelVersion = modelVersion;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (path.equals("/") && method.equals("GET")) {
+                getRecommendations(exchange, query);
+            } else if (path.equals("/more") && method.equals("GET")) {
+                getMore(exchange, query);
+            } else if (path.equals("/favourites") && method.equals("GET")) {
+                getFavourites(exchange, query);
+            } else if (path.equals("/favourites") && method.equals("POST")) {
+                postFavourites(exchange, query);
+            } else if (path.equals("/titles") && method.equals("GET")) {
+                getTitles(exchange);
+            } else if (path.startsWith(POSTERS_PATH) && method.equals("GET")) {
+                getPoster(exchange, path.substring(POSTERS_PATH.length()));
+            } else if (path.equals("/") || path.equals("/more") || path.equals("/favourites") || path.equals("/titles")
+                    || path.startsWith(POSTERS_PATH)) {
+                send(exchange, 405, null, Json.error("Method not allowed: " + method + "."));
+            } else {
+                send(exchange, 404, null, Json.error("Not found: " + path + "."));
+            }
+        } catch (BadRequestException e) {
+            send(exchange, 400, null, Json.error(e.getMessage()));
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            send(exchange, 500, null, Json.error("Internal server error."));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void getRecommendations(HttpExchange exchange, Map<String, String> query) throws IOException {
+        long[] favourites = users.getFavourites(parameter(query, "u"));
+        if (favourites.length == 0) {
+            send(exchange, 400, null, Json.error("No favourite movies found."));
+            return;
+        }
+        String time = parameter(query, "t");
+        String location = parameter(query, "loc");
+        String companion = parameter(query, "comp");
+        Context context = context(time, location, companion);
+        boolean paged = query.containsKey("n");
+        int n = pageSize(query);
+
+        String etag = recommendationsEtag(favourites, time, location, companion, n, paged);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            // client already has these recommendations cached
+            send(exchange, 304, etag, null);
+            return;
+        }
+        if (!paged) {
+            Map<String, List<MovieMetadata>> recommendations = new LinkedHashMap<>();
+            recommendations.put(COLLAB, movies(collab.topK(favourites, context, n)));
+            recommendations.put(CONTENT, movies(content.topK(favourites, context, n)));
+            send(exchange, 200, etag, Json.recommendations(recommendations));
+            return;
+        }
+
+        String version = recommendationsVersion(favourites, time, location, companion);
+        Map<String, List<MovieMetadata>> recommendations = new LinkedHashMap<>();
+        Map<String, String> next = new LinkedHashMap<>();
+        for (String list : new String[]{COLLAB, CONTENT}) {
+            RecommendationCursor first = new RecommendationCursor(list, 0, time, location, companion, version);
+            List<ScoredMovie> page = page(list, favourites, context, 0, n);
+            recommendations.put(list, movies(page));
+            next.put(list, nextCursor(first, page.size(), n));
+        }
+        send(exchange, 200, etag, Json.recommendations(recommendations, next));
+    }
+
+    private void getMore(HttpExchange exchange, Map<String, String> query) throws IOException {
+        long[] favourites = users.getFavourites(parameter(query, "u"));
+        RecommendationCursor cursor;
+        try {
+            cursor = RecommendationCursor.decode(parameter(query, "cursor"));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor.");
+        }
+        if (!cursor.getList().equals(COLLAB) && !cursor.getList().equals(CONTENT)) {
+            throw new BadRequestException("Invalid cursor.");
+        }
+        Context context = context(cursor.getTime(), cursor.getLocation(), cursor.getCompanion());
+        int n = pageSize(query);
+        String version = recommendationsVersion(favourites, cursor.getTime(), cursor.getLocation(),
+                cursor.getCompanion());
+        if (!version.equals(cursor.getVersion())) {
+            send(exchange, 410, null, Json.error("Recommendations changed."));
+            return;
+        }
+
+        List<ScoredMovie> page = page(cursor.getList(), favourites, context, cursor.getOffset(), n);
+        send(exchange, 200, null, Json.page(movies(page), nextCursor(cursor, page.size(), n)));
+    }
+
+    /**
+     * The page of the list at the offset, cut at MAX_RECOMMENDATIONS.
+     */
+    private List<ScoredMovie> page(String list, long[] favourites, Context context, int offset, int n) {
+        int size = Math.min(n, MAX_RECOMMENDATIONS - offset);
+        return list.equals(COLLAB)
+                ? collab.page(favourites, context, offset, size)
+                : content.page(favourites, context, offset, size);
+    }
+
+    /**
+     * The encoded cursor of the page after the one at the cursor, or null if that was the last.
+     */
+    private static String nextCursor(RecommendationCursor cursor, int count, int n) {
+        int offset = cursor.getOffset() + count;
+        if (count < n || offset >= MAX_RECOMMENDATIONS) {
+            return null;
+        }
+        return new RecommendationCursor(cursor.getList(), offset, cursor.getTime(), cursor.getLocation(),
+                cursor.getCompanion(), cursor.getVersion()).encode();
+    }
+
+    private void getFavourites(HttpExchange exchange, Map<String, String> query) throws IOException {
+        long[] favourites = users.getFavourites(parameter(query, "u"));
+        send(exchange, 200, null, Json.movies(catalog.byIds(favourites)));
+    }
+
+    private void postFavourites(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String username = parameter(query, "u");
+        List<String> titles;
+        try (InputStream body = exchange.getRequestBody()) {
+            titles = Json.GSON.fromJson(new InputStreamReader(body, StandardCharsets.UTF_8),
+                    new TypeToken<List<String>>() {
+                    }.getType());
+        } catch (JsonParseException e) {
+            throw new BadRequestException("Expected a JSON list of titles.");
+        }
+        if (titles == null) {
+            throw new BadRequestException("Expected a JSON list of titles.");
+        }
+
+        List<MovieMetadata> found = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        for (String title : titles) {
+            String resolved = title != null ? titleIndex.resolve(title) : null;
+            MovieMetadata movie = resolved != null ? catalog.byTitle(resolved) : null;
+            if (movie != null) {
+                found.add(movie);
+            } else {
+                failed.add(title);
+            }
+        }
+        long[] foundIds = new long[found.size()];
+        for (int i = 0; i < foundIds.length; i++) {
+            foundIds[i] = found.get(i).getMovieId();
+        }
+        // Acknowledged once durable; a failed log write ends up as a 500.
+        users.addFavourites(username, foundIds);
+
+        if (!found.isEmpty()) {
+            send(exchange, 200, null, Json.movies(found));
+        } else {
+            send(exchange, 400, null, Json.error("Movies not found: " + String.join(", ", failed) + "."));
+        }
+    }
+
+    private void getTitles(HttpExchange exchange) throws IOException {
+        if (titlesEtag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            send(exchange, 304, titlesEtag, null);
+            return;
+        }
+        send(exchange, 200, titlesEtag, titlesJson);
+    }
+
+    private void getPoster(HttpExchange exchange, String fileName) throws IOException {
+        // Only plain file names, nothing outside the posters directory.
+        Path poster = fileName.matches(POSTER_FILE_PATTERN) ? posters.resolve(fileName) : null;
+        if (poster == null || !Files.isRegularFile(poster)) {
+            send(exchange, 404, null, Json.error("No poster: " + fileName + "."));
+            return;
+        }
+        exchange.getResponseHeaders().set("Cache-Control", POSTER_CACHE_CONTROL);
+        send(exchange, 200, "image/jpeg", null, Files.readAllBytes(poster));
+    }
+
+    private static Context context(String time, String location, String companion) {
+        try {
+            return Context.of(time, location, companion);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage() + ".");
+        }
+    }
+
+    /**
+     * The n parameter, N_RECOMMENDATIONS if it is missing.
+     */
+    private static int pageSize(Map<String, String> query) {
+        String value = query.get("n");
+        if (value == null) {
+            return N_RECOMMENDATIONS;
+        }
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= 1 && n <= MAX_PAGE_SIZE) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new BadRequestException("Invalid page size: " + value + ", expected 1 to " + MAX_PAGE_SIZE + ".");
+    }
+
+    private List<MovieMetadata> movies(List<ScoredMovie> recommendations) {
+        long[] movieIds = new long[recommendations.size()];
+        for (int i = 0; i < movieIds.length; i++) {
+            movieIds[i] = recommendations.get(i).getMovieId();
+        }
+        return catalog.byIds(movieIds);
+    }
+
+    /**
+     * Same key and hash as recommendations_etag in server.py: recommendations only depend on
+     * the loaded model, the favourites and the context, so the ETag is checked without running
+     * the recommenders.
+     *
+     * @param favourites the favourites in ascending order
+     * @param paged      whether the body has the cursors of the next pages
+     */
+    String recommendationsEtag(long[] favourites, String time, String location, String companion,
+                               int nRecommendations, boolean paged) {
+        StringBuilder key = recommendationsKey(favourites, time, location, companion).append('|')
+                .append(nRecommendations);
+        if (paged) {
+            key.append("|paged");
+        }
+        return etag(key.toString());
+    }
+
+    /**
+     * Same as recommendations_version in server.py: identifies the rankings that pages are cut
+     * from, whatever their size.
+     */
+    String recommendationsVersion(long[] favourites, String time, String location, String companion) {
+        return etag(recommendationsKey(favourites, time, location, companion).toString());
+    }
+
+    private StringBuilder recommendationsKey(long[] favourites, String time, String location, String companion) {
+        StringBuilder key = new StringBuilder(modelVersion).append('|');
+        for (int i = 0; i < favourites.length; i++) {
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(favourites[i]);
+        }
+        return key.append('|').append(time).append('|').append(location).append('|').append(companion);
+    }
+
+    /**
+     * Quoted hex SHA-1 of the text.
+     */
+    private static String etag(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder etag = new StringBuilder(2 + 2 * digest.length).append('"');
+            for (byte b : digest) {
+                etag.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int code, String etag, String body) throws IOException {
+        byte[] bytes = body != null ? body.getBytes(StandardCharsets.UTF_8) : null;
+        if (bytes != null) {
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            if (bytes.length >= GZIP_MIN_BYTES
+                    && acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                bytes = gzip(bytes);
+            }
+        }
+        send(exchange, code, "application/json", etag, bytes);
+    }
+
+    /**
+     * Whether the Accept-Encoding header lists gzip, e.g. "gzip" or "deflate, gzip;q=0.5", without
+     * refusing it with q=0.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] params = coding.split(";");
+            if (!params[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static void send(HttpExchange exchange, int code, String contentType, String etag, byte[] bytes)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-type", contentType);
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        if (bytes == null) {
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String parameter(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null) {
+            throw new BadRequestException("Missing parameter: " + name + ".");
+        }
+        return value;
+    }
+
+    /**
+     * First value of every parameter, decoded like Python's parse_qs: '+' is a space and blank
+     * values are dropped.
+     */
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("[&;]")) {
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                continue;
+            }
+            try {
+                String name = URLDecoder.decode(pair.substring(0, equals), "UTF-8");
+                String value = URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+                if (!value.isEmpty()) {
+                    query.putIfAbsent(name, value);
+                }
+            } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                throw new BadRequestException("Malformed query: " + rawQuery + ".");
+            }
+        }
+        return query;
+    }
+
+    private static final class BadRequestException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        BadRequestException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package pl.edu.agh.movierecommender.server;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pl.edu.agh.movierecommender.core.ContentRecommender;
+import pl.edu.agh.movierecommender.core.ItemKnnRecommender;
+import pl.edu.agh.movierecommender.core.LiveSimilarityIndex;
+import pl.edu.agh.movierecommender.core.MappedModel;
+import pl.edu.agh.movierecommender.core.MovieCatalog;
+import pl.edu.agh.movierecommender.core.Rating;
+import pl.edu.agh.movierecommender.core.RatingsLoader;
+
+/**
+ * Recommendation server backed by the Java engine, a drop-in replacement of server.py: same
+ * port, same API (see {@link RecommendationHandler}), same data files. Favourites are kept in a
+ * {@link UserFavouritesStore} in {@code data/favourites}, started from user_db.json if empty.
+ *
+ * If {@code depaulmovie/model.bin}, written by {@link pl.edu.agh.movierecommender.core.ModelWriter}
+ * from the same data files, is present, it is mapped and served in place instead of reading the
+ * data files and building the similarity tables and content neighbours, and its checksum is the model version: recommendations cached by clients
+ * stay valid across restarts until the model is rewritten. The checksum is verified in the
+ * background once the server runs, and a corrupted model stops it. Otherwise the tables are built into a
+ * {@link LiveSimilarityIndex}, rebuilt from scratch every {@link #REBUILD_INTERVAL_MINUTES}
+ * minutes to check that its incremental updates kept the same lists; lists that drifted are
+ * logged.
+ *
+ * Requests are handled by a bounded pool of threads, so a slow request only holds one of them.
+ * When all threads are busy and the queue is full, the thread accepting connections handles
+ * the request itself, which stops accepting new ones until the load drops.
+ *
+ * {@code RecommendationServer [data directory] [port]}, by default {@code data} and 7777, like
+ * server.py run from the recommender directory.
+ */
+public final class RecommendationServer {
+
+    static final int DEFAULT_PORT = 7777;
+    static final String MODEL_FILE = "depaulmovie/model.bin";
+    static final long REBUILD_INTERVAL_MINUTES = 60;
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int STOP_DELAY_SECONDS = 1;
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+
+    private RecommendationServer(HttpServer server, ThreadPoolExecutor executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts serving on the port, on all interfaces, with the given number of request threads.
+     */
+    static RecommendationServer start(RecommendationHandler handler, int port, int threads)
+            throws IOException {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "recommendation-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", handler);
+        server.setExecutor(executor);
+        server.start();
+        return new RecommendationServer(server, executor);
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(STOP_DELAY_SECONDS);
+        executor.shutdown();
+    }
+
+    private static void scheduleRebuilds(LiveSimilarityIndex live) {
+        ScheduledExecutorService rebuilds = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "similarity-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebuilds.scheduleWithFixedDelay(() -> {
+            try {
+                int mismatches = live.rebuild();
+                if (mismatches > 0) {
+                    System.err.println(new Date() + " Rebuilt the similarity tables, " + mismatches
+                            + " neighbour lists had drifted");
+                } else {
+                    System.out.println(new Date() + " Rebuilt the similarity tables, no list had drifted");
+                }
+            } catch (RuntimeException e) {
+                // Would cancel the next rebuilds otherwise.
+                e.printStackTrace();
+            }
+        }, REBUILD_INTERVAL_MINUTES, REBUILD_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    private static void verifyInBackground(MappedModel model) {
+        Thread verify = new Thread(() -> {
+            try {
+                model.verify();
+                System.out.println(new Date() + " Verified the checksum of " + model.file());
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }, "model-verify");
+        verify.setDaemon(true);
+        verify.start();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path data = Paths.get(args.length > 0 ? args[0] : "data");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        Path userDb = data.resolve("user_db.json");
+        Path favourites = data.resolve("favourites");
+
+        Path modelFile = data.resolve(MODEL_FILE);
+        MovieCatalog catalog;
+        ItemKnnRecommender collab;
+        ContentRecommender content;
+        String modelVersion;
+        if (Files.exists(modelFile)) {
+            MappedModel model = MappedModel.open(modelFile);
+            verifyInBackground(model);
+            content = model.content();
+            catalog = content.catalog();
+            collab = new ItemKnnRecommender(model);
+            modelVersion = Long.toHexString(model.checksum());
+        } else {
+            List<Rating> ratings = RatingsLoader.loadRatingsTxt(data.resolve("depaulmovie/ratings.txt"));
+            catalog = MovieCatalog.loadCsv(data.resolve("depaulmovie/filtered_metadata.csv"));
+            content = new ContentRecommender(catalog, ratings);
+            LiveSimilarityIndex live = new LiveSimilarityIndex(ratings);
+            scheduleRebuilds(live);
+            collab = new ItemKnnRecommender(live);
+            // changes on every restart, when the rating data may have been reloaded
+            modelVersion = String.valueOf(System.currentTimeMillis() / 1000.0);
+        }
+        UserFavouritesStore users = UserFavouritesStore.open(favourites);
+        if (users.isEmpty() && Files.exists(userDb)) {
+            // First start after server.py: take over its favourites.
+            users.importUserDb(userDb);
+        }
+        RecommendationHandler handler = new RecommendationHandler(collab, content, catalog, users,
+                data.resolve("depaulmovie/img"), modelVersion);
+
+        // Recommendations are CPU bound, the threads beyond the cores cover the socket I/O.
+        int threads = 2 * Runtime.getRuntime().availableProcessors();
+        RecommendationServer server = start(handler, port, threads);
+        System.out.println(new Date() + " Server starts on port " + server.port() + ", " + threads + " threads");
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            try {
+                users.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            System.out.println(new Date() + " Server stops on port " + server.port());
+        }));
+    }
+}
@@ -0,0 +1,596 @@
+package pl.edu.agh.movierecommender.server;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Durable favourite movies of every user, replacing the dictionary of user_repository.py that
+ * was only saved on shutdown.
+ *
+ * Favourites are held in memory, split in {@link #STRIPES} lock stripes by user name, so that
+ * requests of different users rarely contend. Every addition is appended to a write-ahead log
+ * before it is acknowledged; a single committer thread writes whatever was appended while it
+ * was syncing the previous batch with one write and one fsync, so that concurrent writers
+ * share the cost of a sync (group commit).
+ *
+ * The log is split in numbered segments. Once a segment grows past
+ * {@link #SNAPSHOT_LOG_BYTES}, the committer moves on to the next one, and a snapshot of the
+ * favourites, covering the sealed segments, replaces them in the background. On startup the
+ * latest snapshot is loaded and only the newer segments are replayed; a record torn by a crash
+ * ends its segment. Additions are set unions, so replaying a record also contained in the
+ * snapshot, or records in another order, gives the same favourites.
+ *
+ * Files: {@code snapshot-<n>} covers the segments up to {@code log-<n>}; a
+ * {@code snapshot-<n>.tmp} left by a crash is deleted on startup.
+ */
+final class UserFavouritesStore implements Closeable {
+
+    static final int STRIPES = 64;
+    static final long SNAPSHOT_LOG_BYTES = 4 << 20;
+
+    private static final int SNAPSHOT_MAGIC = 0x55464153;
+    private static final String LOG_PREFIX = "log-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private static final class Stripe {
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+        final Map<String, TreeSet<Long>> favourites = new HashMap<>();
+    }
+
+    private final Path directory;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    // Log state, guarded by logLock.
+    private final Object logLock = new Object();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedRecords;
+    private long durableRecords;
+    private IOException failure;
+    private boolean closed;
+
+    // Owned by the committer thread, or by close() once it has stopped.
+    private FileChannel log;
+    private long segment;
+    // Written by the committer only.
+    private volatile long commits;
+
+    private final Thread committer;
+    private final ExecutorService snapshots = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "favourites-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private UserFavouritesStore(Path directory) {
+        this.directory = directory;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        committer = new Thread(this::commitLoop, "favourites-log");
+        committer.setDaemon(true);
+    }
+
+    /**
+     * Opens the store in the directory, recovering the favourites it holds, or creating it.
+     */
+    static UserFavouritesStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        UserFavouritesStore store = new UserFavouritesStore(directory);
+        store.recover();
+        store.committer.start();
+        return store;
+    }
+
+    /**
+     * The user's favourites in ascending order, empty for an unknown user.
+     */
+    long[] getFavourites(String user) {
+        Stripe stripe = stripe(user);
+        stripe.lock.readLock().lock();
+        try {
+            TreeSet<Long> set = stripe.favourites.get(user);
+            if (set == null) {
+                return new long[0];
+            }
+            long[] movieIds = new long[set.size()];
+            int i = 0;
+            for (long movieId : set) {
+                movieIds[i++] = movieId;
+            }
+            return movieIds;
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the favourites of user_db.json, a JSON object of user names to lists of movie ids,
+     * as written by user_repository.py.
+     */
+    void importUserDb(Path file) throws IOException {
+        Map<String, long[]> data;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            data = Json.GSON.fromJson(reader, new TypeToken<Map<String, long[]>>() {
+            }.getType());
+        } catch (JsonParseException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+        if (data != null) {
+            for (Map.Entry<String, long[]> user : data.entrySet()) {
+                addFavourites(user.getKey(), user.getValue());
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                if (!stripe.favourites.isEmpty()) {
+                    return false;
+                }
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the movies to the user's favourites, returning once the addition is on disk.
+     *
+     * @throws IOException if the log could not be written, the addition is then only in memory
+     */
+    void addFavourites(String user, long[] movieIds) throws IOException {
+        if (movieIds.length == 0) {
+            return;
+        }
+        Stripe stripe = stripe(user);
+        stripe.lock.writeLock().lock();
+        try {
+            TreeSet<Long> set = stripe.favourites.computeIfAbsent(user, key -> new TreeSet<>());
+            for (long movieId : movieIds) {
+                set.add(movieId);
+            }
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+        append(record(user, movieIds));
+    }
+
+    /**
+     * Log syncs so far, each committing every addition appended since the previous one. Read
+     * without taking the lock of the writers.
+     */
+    long commits() {
+        return commits;
+    }
+
+    /**
+     * Commits the pending additions, writes a snapshot of all favourites and stops.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (logLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            logLock.notifyAll();
+        }
+        try {
+            committer.join();
+            snapshots.shutdown();
+            snapshots.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the favourites store");
+        }
+        log.close();
+        synchronized (logLock) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        writeSnapshot(segment);
+    }
+
+    private Stripe stripe(String user) {
+        int hash = user.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    // Write-ahead log.
+
+    private void append(byte[] record) throws IOException {
+        synchronized (logLock) {
+            if (closed) {
+                throw new IOException("The favourites store is closed");
+            }
+            pending.write(record, 0, record.length);
+            long sequence = ++appendedRecords;
+            logLock.notifyAll();
+            boolean interrupted = false;
+            while (durableRecords < sequence && failure == null) {
+                try {
+                    logLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (durableRecords < sequence) {
+                throw new IOException("Favourites log failed", failure);
+            }
+        }
+    }
+
+    private void commitLoop() {
+        while (true) {
+            ByteArrayOutputStream batch;
+            long sequence;
+            synchronized (logLock) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        logLock.wait();
+                    } catch (InterruptedException e) {
+                        // Only close() stops the committer.
+                    }
+                }
+                if (pending.size() == 0) {
+                    // Closed and committed.
+                    return;
+                }
+                batch = pending;
+                pending = new ByteArrayOutputStream(batch.size());
+                sequence = appendedRecords;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+                while (buffer.hasRemaining()) {
+                    log.write(buffer);
+                }
+                log.force(false);
+            } catch (IOException e) {
+                synchronized (logLock) {
+                    failure = e;
+                    logLock.notifyAll();
+                }
+                e.printStackTrace();
+                return;
+            }
+            synchronized (logLock) {
+                durableRecords = sequence;
+                commits++;
+                logLock.notifyAll();
+            }
+            if (shouldRotate()) {
+                rotate();
+            }
+        }
+    }
+
+    private boolean shouldRotate() {
+        try {
+            return log.size() >= SNAPSHOT_LOG_BYTES;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Moves on to the next segment and snapshots the sealed ones in the background. If the new
+     * segment cannot be created, the committer keeps appending to the current one and tries
+     * again after the next batch.
+     */
+    private void rotate() {
+        try {
+            startSegment(segment + 1);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        long covered = segment - 1;
+        snapshots.execute(() -> {
+            try {
+                writeSnapshot(covered);
+            } catch (IOException e) {
+                // The segments are kept, and replayed on recovery instead.
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Switches the log to a new segment once its directory entry is on disk, so that the
+     * records acknowledged in it cannot be lost with the file itself.
+     */
+    private void startSegment(long number) throws IOException {
+        FileChannel next = FileChannel.open(segmentFile(LOG_PREFIX, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        try {
+            syncDirectory();
+        } catch (IOException e) {
+            next.close();
+            throw e;
+        }
+        FileChannel previous = log;
+        log = next;
+        segment = number;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Makes the files created, renamed or deleted in the directory so far durable.
+     */
+    private void syncDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Length, CRC32 of the payload, then the payload: user name, count, movie ids.
+     */
+    private static byte[] record(String user, long[] movieIds) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(16 + user.length() + 8 * movieIds.length);
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            out.writeUTF(user);
+            out.writeInt(movieIds.length);
+            for (long movieId : movieIds) {
+                out.writeLong(movieId);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        ByteBuffer record = ByteBuffer.allocate(8 + bytes.length);
+        record.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes);
+        return record.array();
+    }
+
+    /**
+     * Applies the records of the segment up to the first incomplete or corrupted one.
+     */
+    private void replay(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int crc = in.readInt();
+                    if (length < 0 || length > SNAPSHOT_LOG_BYTES) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    CRC32 check = new CRC32();
+                    check.update(payload, 0, length);
+                    if ((int) check.getValue() != crc) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                String user = record.readUTF();
+                long[] movieIds = new long[record.readInt()];
+                for (int i = 0; i < movieIds.length; i++) {
+                    movieIds[i] = record.readLong();
+                }
+                applyRecovered(user, movieIds);
+            }
+        }
+    }
+
+    private void applyRecovered(String user, long[] movieIds) {
+        TreeSet<Long> set = stripe(user).favourites.computeIfAbsent(user, key -> new TreeSet<>());
+        for (long movieId : movieIds) {
+            set.add(movieId);
+        }
+    }
+
+    // Snapshots and recovery.
+
+    /**
+     * Writes the snapshot covering the segments up to the given one, then deletes them and the
+     * older snapshots. The additions logged in later segments may be in it too.
+     */
+    private void writeSnapshot(long covered) throws IOException {
+        Path file = segmentFile(SNAPSHOT_PREFIX, covered);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream stream = new FileOutputStream(tmp.toFile())) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(stream, crc)));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(covered);
+            for (Stripe stripe : stripes) {
+                List<String> users;
+                List<long[]> favourites;
+                stripe.lock.readLock().lock();
+                try {
+                    users = new ArrayList<>(stripe.favourites.keySet());
+                    favourites = new ArrayList<>(users.size());
+                    for (String user : users) {
+                        favourites.add(stripe.favourites.get(user).stream().mapToLong(Long::longValue).toArray());
+                    }
+                } finally {
+                    stripe.lock.readLock().unlock();
+                }
+                for (int i = 0; i < users.size(); i++) {
+                    out.writeBoolean(true);
+                    out.writeUTF(users.get(i));
+                    out.writeInt(favourites.get(i).length);
+                    for (long movieId : favourites.get(i)) {
+                        out.writeLong(movieId);
+                    }
+                }
+            }
+            out.writeBoolean(false);
+            out.flush();
+            new DataOutputStream(stream).writeLong(crc.getValue());
+            stream.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // The segments may only go once the snapshot replacing them is sure to be found.
+        syncDirectory();
+        for (long number : segments(SNAPSHOT_PREFIX)) {
+            if (number < covered) {
+                Files.deleteIfExists(segmentFile(SNAPSHOT_PREFIX, number));
+            }
+        }
+        for (long number : segments(LOG_PREFIX)) {
+            if (number <= covered) {
+                Files.deleteIfExists(segmentFile(LOG_PREFIX, number));
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        // A snapshot the crash interrupted: the segments it was replacing are all still there.
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*.tmp")) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        List<Long> snapshotNumbers = segments(SNAPSHOT_PREFIX);
+        long covered = -1;
+        if (!snapshotNumbers.isEmpty()) {
+            covered = snapshotNumbers.get(snapshotNumbers.size() - 1);
+            readSnapshot(segmentFile(SNAPSHOT_PREFIX, covered));
+        }
+        long last = covered;
+        for (long number : segments(LOG_PREFIX)) {
+            if (number > covered) {
+                replay(segmentFile(LOG_PREFIX, number));
+            }
+            last = Math.max(last, number);
+        }
+        // Appending after a torn record would hide the records behind it: start a new segment.
+        startSegment(last + 1);
+    }
+
+    private void readSnapshot(Path file) throws IOException {
+        long size = Files.size(file);
+        CRC32 crc = new CRC32();
+        try (InputStream stream = Files.newInputStream(file)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new CheckedInputStream(
+                    new LimitedInputStream(stream, size - 8), crc)));
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(file + ": not a favourites snapshot");
+            }
+            in.readLong();
+            while (in.readBoolean()) {
+                String user = in.readUTF();
+                long[] movieIds = new long[in.readInt()];
+                for (int i = 0; i < movieIds.length; i++) {
+                    movieIds[i] = in.readLong();
+                }
+                applyRecovered(user, movieIds);
+            }
+            long expected = crc.getValue();
+            if (new DataInputStream(stream).readLong() != expected) {
+                throw new IOException(file + ": snapshot checksum mismatch");
+            }
+        }
+    }
+
+    private List<Long> segments(String prefix) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(prefix.length());
+                if (suffix.matches("\\d+")) {
+                    numbers.add(Long.parseLong(suffix));
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private Path segmentFile(String prefix, long number) {
+        return directory.resolve(String.format("%s%010d", prefix, number));
+    }
+
+    /**
+     * Reads at most the given number of bytes, leaving the rest of the stream unread.
+     */
+    private static final class LimitedInputStream extends InputStream {
+
+        private final InputStream in;
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            this.in = in;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package pl.edu.agh.movierecommender.server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecommendationHandlerTest {
+
+    @Test
+    public void gzipsForClientsAcceptingIt() {
+        assertTrue(RecommendationHandler.acceptsGzip("gzip"));
+        assertTrue(RecommendationHandler.acceptsGzip("GZIP"));
+        assertTrue(RecommendationHandler.acceptsGzip("deflate, gzip;q=0.5"));
+        assertTrue(RecommendationHandler.acceptsGzip("gzip; q=1.0, identity"));
+    }
+
+    @Test
+    public void sendsPlainBodiesOtherwise() {
+        assertFalse(RecommendationHandler.acceptsGzip(null));
+        assertFalse(RecommendationHandler.acceptsGzip(""));
+        assertFalse(RecommendationHandler.acceptsGzip("identity"));
+        assertFalse(RecommendationHandler.acceptsGzip("x-gzip, deflate"));
+        assertFalse(RecommendationHandler.acceptsGzip("gzip;q=0"));
+        assertFalse(RecommendationHandler.acceptsGzip("gzip;q=0.0, deflate"));
+    }
+}
@@ -0,0 +1,157 @@
+package pl.edu.agh.movierecommender.server;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+public class UserFavouritesStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<UserFavouritesStore> stores = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (UserFavouritesStore store : stores) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void keepsFavouritesAcrossClose() throws IOException {
+        Path directory = folder.newFolder().toPath();
+        UserFavouritesStore store = UserFavouritesStore.open(directory);
+        store.addFavourites("anna", new long[]{3, 1});
+        store.addFavourites("anna", new long[]{2, 3});
+        store.addFavourites("bob", new long[]{7});
+        store.close();
+
+        UserFavouritesStore reopened = open(directory);
+
+        assertArrayEquals(new long[]{1, 2, 3}, reopened.getFavourites("anna"));
+        assertArrayEquals(new long[]{7}, reopened.getFavourites("bob"));
+        assertArrayEquals(new long[0], reopened.getFavourites("carol"));
+    }
+
+    @Test
+    public void recoversAcknowledgedAdditionsBeforeATornRecord() throws IOException {
+        Path directory = folder.newFolder().toPath();
+        UserFavouritesStore store = open(directory);
+        for (int i = 0; i < 100; i++) {
+            store.addFavourites("user" + i % 10, new long[]{i});
+        }
+        Path crashed = crashCopy(directory);
+        tearNextRecord(crashed);
+
+        UserFavouritesStore recovered = open(crashed);
+
+        for (int user = 0; user < 10; user++) {
+            long[] expected = new long[10];
+            for (int i = 0; i < 10; i++) {
+                expected[i] = user + 10 * i;
+            }
+            assertArrayEquals(expected, recovered.getFavourites("user" + user));
+        }
+    }
+
+    @Test
+    public void keepsAdditionsMadeAfterRecoveringATornRecord() throws IOException {
+        Path directory = folder.newFolder().toPath();
+        open(directory).addFavourites("anna", new long[]{1});
+        Path crashed = crashCopy(directory);
+        tearNextRecord(crashed);
+
+        // Appended behind the torn record, this one would never be replayed.
+        open(crashed).addFavourites("anna", new long[]{2});
+        Path crashedAgain = crashCopy(crashed);
+
+        assertArrayEquals(new long[]{1, 2}, open(crashedAgain).getFavourites("anna"));
+    }
+
+    @Test
+    public void stopsReplayingAtACorruptedRecord() throws IOException {
+        Path directory = folder.newFolder().toPath();
+        UserFavouritesStore store = open(directory);
+        store.addFavourites("anna", new long[]{1});
+        store.addFavourites("anna", new long[]{2});
+        Path crashed = crashCopy(directory);
+        // The last byte of the log is the movie id of the second record.
+        Path log = lastLog(crashed);
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(log, bytes);
+
+        assertArrayEquals(new long[]{1}, open(crashed).getFavourites("anna"));
+    }
+
+    @Test
+    public void deletesASnapshotInterruptedByACrash() throws IOException {
+        Path directory = folder.newFolder().toPath();
+        open(directory).addFavourites("anna", new long[]{1});
+        Path crashed = crashCopy(directory);
+        Path unfinished = crashed.resolve("snapshot-0000000000.tmp");
+        Files.write(unfinished, new byte[]{0x55, 0x46});
+
+        UserFavouritesStore recovered = open(crashed);
+
+        assertFalse(Files.exists(unfinished));
+        assertArrayEquals(new long[]{1}, recovered.getFavourites("anna"));
+    }
+
+    private UserFavouritesStore open(Path directory) throws IOException {
+        UserFavouritesStore store = UserFavouritesStore.open(directory);
+        stores.add(store);
+        return store;
+    }
+
+    /**
+     * The files of an open store as a crash would leave them, every acknowledged addition
+     * included.
+     */
+    private Path crashCopy(Path directory) throws IOException {
+        Path copy = folder.newFolder().toPath();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Appends the start of a record the crash interrupted: its header and part of its payload.
+     */
+    private static void tearNextRecord(Path directory) throws IOException {
+        Path log = lastLog(directory);
+        byte[] bytes = Files.readAllBytes(log);
+        byte[] torn = Arrays.copyOf(bytes, bytes.length + 12);
+        torn[bytes.length + 3] = 40;
+        Files.write(log, torn);
+    }
+
+    private static Path lastLog(Path directory) throws IOException {
+        Path last = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "log-*")) {
+            for (Path file : files) {
+                // Recovery starts a new, empty segment.
+                if (Files.size(file) > 0 && (last == null || file.compareTo(last) > 0)) {
+                    last = file;
+                }
+            }
+        }
+        return last;
+    }
+}
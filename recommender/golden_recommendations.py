@@ -0,0 +1,41 @@
+# Writes the collaborative recommendations of the bundled data for a few favourites in every
+# context. ItemKnnRecommenderTest in recommender-core checks the Java engine against them, so
+# regenerate them whenever KnnItemCollaborativeRecommender changes. Run from this directory:
+#   python golden_recommendations.py \
+#       ../recommender-core/src/test/resources/pl/edu/agh/movierecommender/core/item_knn_golden.txt
+import itertools
+import sys
+
+from movie_recommenders import KnnItemCollaborativeRecommender
+from movie_repository import get_movie_repository, load_rating_data, Context
+
+FAVOURITES = [
+    [109830],
+    [133093, 120338, 109830],
+    [111161, 110357, 114369, 120737, 167260],
+    # an unknown movie is ignored
+    [1375666, 1234567],
+]
+TIMES = ["Weekday", "Weekend"]
+LOCATIONS = ["Home", "Cinema"]
+COMPANIONS = ["Alone", "Partner", "Family"]
+N_RECOMMENDATIONS = 10
+
+
+def main(golden_file):
+    # make_recommendations prints its results, the golden file is written separately
+    recommender = KnnItemCollaborativeRecommender(load_rating_data(), get_movie_repository())
+    lines = ["# favourites\ttime\tlocation\tcompanion\tmovie id:cosine distance, best first"]
+    for favs in FAVOURITES:
+        for time, location, companion in itertools.product(TIMES, LOCATIONS, COMPANIONS):
+            dists, movies = recommender.make_recommendations(favs, Context(time, location, companion),
+                                                             N_RECOMMENDATIONS)
+            recommendations = " ".join("{0:07d}:{1:.12f}".format(int(movie.movie_id), float(dist))
+                                       for dist, movie in zip(dists, movies))
+            lines.append("\t".join([",".join(str(f) for f in favs), time, location, companion, recommendations]))
+    with open(golden_file, "w") as golden:
+        golden.write("\n".join(lines) + "\n")
+
+
+if __name__ == '__main__':
+    main(sys.argv[1])
@@ -13,18 +13,22 @@ class KnnItemCollaborativeRecommender:
         self.movie_repository = movie_repository
         self.model = NearestNeighbors(metric='cosine', algorithm='brute')
 
-    def get_full_predictions(self, fav_movie_ids, ctx, n_recommendations):
-        dists, recommends = self.make_recommendations(fav_movie_ids, ctx, n_recommendations)
+    def get_full_predictions(self, fav_movie_ids, ctx, n_recommendations, depth=None):
+        dists, recommends = self.make_recommendations(fav_movie_ids, ctx, n_recommendations, depth)
         return recommends
 
-    def make_recommendations(self, fav_movie_ids, ctx, n_recommendations):
+    def make_recommendations(self, fav_movie_ids, ctx, n_recommendations, depth=None):
         """
         Make top n movie recommendations using Item-Based Collaborative Filtering.
 
         :param fav_movie_ids: list(int), list of favourite movie ids
         :param ctx: Context, user context for recommendations
         :param n_recommendations: int, top n recommendations
+        :param depth: int, neighbours merged per favourite, n_recommendations by default; pages of
+                      one list pass the same depth so that they are cut from the same ranking
         """
+        if depth is None:
+            depth = n_recommendations
         # pre-filtering of context data
         ctx_filter = (self.ratings_df.time.str.contains(ctx.time)) | (
             self.ratings_df.location.str.contains(ctx.location)) | (
@@ -46,12 +50,14 @@ class KnnItemCollaborativeRecommender:
         fav_sparse_indices = [final_data.index.get_loc(movie_id)
                               for movie_id in fav_movie_ids
                               if movie_id in final_data.index]
-        distances, indices = self.model.kneighbors(sparse_data[fav_sparse_indices], n_neighbors=n_recommendations + 1)
+        # there are no more neighbours than movies rated in the context
+        n_neighbors = min(depth + 1, sparse_data.shape[0])
+        distances, indices = self.model.kneighbors(sparse_data[fav_sparse_indices], n_neighbors=n_neighbors)
 
-        # shape: (len(fav_sparse_indices), n_recommendations + 1)
+        # shape: (len(fav_sparse_indices), n_neighbors)
         # argsort distances in 2d and choose these indices
         sorted_2d_indices = np.dstack(np.unravel_index(
-            np.argsort(distances.ravel()), (len(fav_sparse_indices), n_recommendations + 1)
+            np.argsort(distances.ravel()), (len(fav_sparse_indices), n_neighbors)
         ))[0]
 
         final_movie_ids = []
@@ -128,14 +134,18 @@ class ContentBasedRecommender:
         # The cosine similarity matrix
         return cosine_similarity(count_matrix, count_matrix)
 
-    def get_full_predictions(self, fav_movie_ids, ctx, n_recommendations):
+    def get_full_predictions(self, fav_movie_ids, ctx, n_recommendations, depth=None):
         """
         Make top n movie recommendations based on the item characteristics (Content-Based Recommendations).
 
         :param fav_movie_ids: list(int), list of favourite movie ids
         :param ctx: Context, user context for recommendations
         :param n_recommendations: int, top n recommendations
+        :param depth: int, similar movies merged per favourite, n_recommendations by default; pages
+                      of one list pass the same depth so that they are cut from the same ranking
         """
+        if depth is None:
+            depth = n_recommendations
         if not self.preprocessed:
             self.preprocess_data()
 
@@ -155,7 +165,7 @@ class ContentBasedRecommender:
             # Find n+1 largest (similarity is maximum for the movie itself)
             score_series = pd.Series(self.similarity_matrix[fav_id]).sort_values(ascending=False)
             # Filter only the movies that were rated in the current context
-            top_idxs = score_series.index[score_series.index.isin(ctx_movies_ids)][1:n_recommendations+1]
+            top_idxs = score_series.index[score_series.index.isin(ctx_movies_ids)][1:depth+1]
 
             for idx in top_idxs:
                 found_similarity = score_series[idx]
@@ -1,8 +1,17 @@
 import json
+import re
 
 import pandas as pd
 
 
+def normalize_title(title):
+    # Same normalisation as TitleIndex in recommender-core, used by the app: lower case,
+    # apostrophes dropped, any other run of characters that are not letters or digits turned into
+    # a single space.
+    title = title.lower().replace("'", "").replace(u"\u2019", "")
+    return re.sub(r"[\W_]+", " ", title, flags=re.UNICODE).strip()
+
+
 class Context:
     def __init__(self, time, location, companion, user_id=None):
         self.time = time
@@ -67,10 +76,16 @@ class MovieRepository:
 
     def get_by_title(self, title):
         m = self.repository.loc[self.repository['title'] == title]
+        if m.shape[0] == 0:
+            # resolve like the app's suggestions, ignoring case and punctuation
+            m = self.repository.loc[self.repository['title'].map(normalize_title) == normalize_title(title)]
         if m.shape[0] > 0:
             return MovieRepository.transform_df_to_objs(m)[0]
         return None
 
+    def get_titles(self):
+        return list(self.repository['title'])
+
     def get_by_ids(self, movie_ids):
         if len(movie_ids) == 0:
             return []
@@ -1,5 +1,11 @@
+import base64
+import hashlib
 import json
+import os
+import re
 import time
+import zlib
+from collections import OrderedDict
 from http.server import BaseHTTPRequestHandler, HTTPServer
 from urlparse import urlparse, parse_qs
 
@@ -9,19 +15,144 @@ from user_repository import get_user_repository
 
 hostName = "192.168.0.129"
 hostPort = 7777
+posters_dir = "data/depaulmovie/img"
+n_recommendations_default = 10
+max_page_size = 50
+max_recommendations = 500
+# every page of a list is cut from the ranking of this depth, so pages never overlap
+ranking_depth = max_recommendations
+# rankings kept for the next pages, by list and recommendations version
+ranking_cache_size = 256
+# smaller JSON bodies are sent as they are, compressing them would save little
+gzip_min_bytes = 512
 
 
 def obj_list_to_json(obj_list):
     return json.dumps(obj_list, default=(lambda x: x.__dict__), indent=2)
 
 
+def accepts_gzip(accept_encoding):
+    # e.g. "gzip", as sent by OkHttp, or "deflate, gzip;q=0.5"; "gzip;q=0" refuses it
+    for coding in (accept_encoding or "").split(","):
+        params = [param.strip() for param in coding.split(";")]
+        if params[0].lower() != "gzip":
+            continue
+        for param in params[1:]:
+            if param.startswith("q="):
+                try:
+                    return float(param[2:]) > 0
+                except ValueError:
+                    return False
+        return True
+    return False
+
+
+def gzip_bytes(body):
+    compressor = zlib.compressobj(6, zlib.DEFLATED, 16 + zlib.MAX_WBITS)
+    return compressor.compress(body) + compressor.flush()
+
+
+def recommendations_key(model_version, favs, ctx):
+    return "{0}|{1}|{2}|{3}|{4}".format(model_version, ",".join(str(f) for f in sorted(favs)),
+                                        ctx.time, ctx.location, ctx.companion)
+
+
+def recommendations_etag(model_version, favs, ctx, n_recommendations, paged=False):
+    # Recommendations only depend on the loaded model, the favourites and the context,
+    # so the ETag can be checked without running the recommenders.
+    key = "{0}|{1}".format(recommendations_key(model_version, favs, ctx), n_recommendations)
+    if paged:
+        # the body also has the cursors of the next pages
+        key += "|paged"
+    return '"{0}"'.format(hashlib.sha1(key.encode('utf-8')).hexdigest())
+
+
+def recommendations_version(model_version, favs, ctx):
+    # identifies the rankings pages are cut from, whatever their size
+    key = recommendations_key(model_version, favs, ctx)
+    return '"{0}"'.format(hashlib.sha1(key.encode('utf-8')).hexdigest())
+
+
+def encode_cursor(rec_list, offset, ctx, version):
+    # opaque to the client: "list|offset|time|location|companion|version" in unpadded url-safe base64
+    text = "|".join([rec_list, str(offset), ctx.time, ctx.location, ctx.companion, version])
+    return base64.urlsafe_b64encode(text.encode('utf-8')).decode('ascii').rstrip("=")
+
+
+def decode_cursor(cursor):
+    """
+    :return: (list, offset, Context, version), or None if it is not a cursor
+    """
+    try:
+        text = base64.urlsafe_b64decode(str(cursor) + "=" * (-len(cursor) % 4)).decode('utf-8')
+        fields = text.split("|")
+        if len(fields) != 6 or int(fields[1]) < 0:
+            return None
+        return fields[0], int(fields[1]), Context(fields[2], fields[3], fields[4]), fields[5]
+    except (TypeError, ValueError):
+        return None
+
+
+def next_cursor(rec_list, offset, count, n, ctx, version):
+    # the page at offset had count of n movies; None after the last page
+    if count < n or offset + count >= max_recommendations:
+        return None
+    return encode_cursor(rec_list, offset + count, ctx, version)
+
+
+def page_size(query_components):
+    """
+    :return: the n parameter, n_recommendations_default if missing, None if invalid
+    """
+    if 'n' not in query_components:
+        return n_recommendations_default
+    try:
+        n = int(query_components['n'][0])
+    except ValueError:
+        return None
+    return n if 1 <= n <= max_page_size else None
+
+
 class RecommendationHandler(BaseHTTPRequestHandler):
 
-    def _send_headers(self, code):
+    rankings = OrderedDict()
+
+    def _ranking(self, rec_list, favs, ctx, version):
+        # the full ranking of the list that every page is sliced from, computed once per version
+        key = (rec_list, version)
+        ranking = self.rankings.pop(key, None)
+        if ranking is None:
+            ranking = self.recommenders[rec_list].get_full_predictions(favs, ctx, ranking_depth, ranking_depth)
+            if len(self.rankings) >= ranking_cache_size:
+                self.rankings.popitem(last=False)
+        self.rankings[key] = ranking
+        return ranking
+
+    def _send_headers(self, code, etag=None):
         self.send_response(code)
         self.send_header('Content-type', 'application/json')
+        if etag is not None:
+            self.send_header('ETag', etag)
         self.end_headers()
 
+    def _send(self, code, body, etag=None):
+        # JSON bodies, gzipped for the clients accepting it
+        if not isinstance(body, bytes):
+            body = body.encode('utf-8')
+        gzipped = len(body) >= gzip_min_bytes and accepts_gzip(self.headers.get('Accept-Encoding'))
+        if gzipped:
+            body = gzip_bytes(body)
+        self.send_response(code)
+        self.send_header('Content-type', 'application/json')
+        if etag is not None:
+            self.send_header('ETag', etag)
+        self.send_header('Vary', 'Accept-Encoding')
+        if gzipped:
+            self.send_header('Content-Encoding', 'gzip')
+        self.send_header('Content-Length', str(len(body)))
+        self.end_headers()
+        self.wfile.write(body)
+
     def do_GET(self):
         parsed_url = urlparse(self.path)
         if parsed_url.path == "/":
@@ -32,21 +163,62 @@ class RecommendationHandler(BaseHTTPRequestHandler):
             favs = self.user_repository.get_user_favourites(username)
             if not favs:
                 # user with no favourites, return error msg
-                self._send_headers(400)
                 error_msg = {"error": "No favourite movies found."}
-                self.wfile.write(json.dumps(error_msg))
+                self._send(400, json.dumps(error_msg))
                 return
 
             # TODO: handle missing parameters.
             ctx = Context(query_components['t'][0], query_components['loc'][0], query_components['comp'][0])
+            # only clients paging through the lists send n, the others could not parse the cursors
+            paged = 'n' in query_components
+            n = page_size(query_components)
+            if n is None:
+                self._send(400, json.dumps({"error": "Invalid page size, expected 1 to {0}.".format(max_page_size)}))
+                return
+            etag = recommendations_etag(self.model_version, favs, ctx, n, paged)
+            if self.headers.get('If-None-Match') == etag:
+                # client already has these recommendations cached
+                self._send_headers(304, etag)
+                return
+
             recommendations = {}
-            for key, rec in self.recommenders.items():
-                movie_data = rec.get_full_predictions(favs, ctx, 10)
-                recommendations[key] = movie_data
+            if paged:
+                version = recommendations_version(self.model_version, favs, ctx)
+                next_cursors = {}
+                for key in self.recommenders:
+                    movie_data = self._ranking(key, favs, ctx, version)[:n]
+                    recommendations[key] = movie_data
+                    next_cursors[key] = next_cursor(key, 0, len(movie_data), n, ctx, version)
+                recommendations["next"] = next_cursors
+            else:
+                for key, rec in self.recommenders.items():
+                    recommendations[key] = rec.get_full_predictions(favs, ctx, n)
 
             recommendations_json = obj_list_to_json(recommendations)
-            self._send_headers(200)
-            self.wfile.write(recommendations_json)
+            self._send(200, recommendations_json, etag)
+            return
+
+        elif parsed_url.path == "/more":
+            # next page of a list, e.g. /more?u=username&cursor=...&n=20
+            query_components = parse_qs(parsed_url.query)
+            username = query_components['u'][0]
+            favs = self.user_repository.get_user_favourites(username)
+            cursor = decode_cursor(query_components['cursor'][0]) if 'cursor' in query_components else None
+            n = page_size(query_components)
+            if cursor is None or cursor[0] not in self.recommenders or n is None:
+                self._send(400, json.dumps({"error": "Invalid cursor or page size."}))
+                return
+            rec_list, offset, ctx, version = cursor
+            if not favs or recommendations_version(self.model_version, favs, ctx) != version:
+                # the favourites or the model changed since the first page
+                self._send(410, json.dumps({"error": "Recommendations changed."}))
+                return
+
+            # a page is a slice of the same ranking as the first one
+            end = min(offset + n, max_recommendations)
+            movie_data = self._ranking(rec_list, favs, ctx, version)[offset:end]
+            page = {"movies": movie_data, "next": next_cursor(rec_list, offset, len(movie_data), n, ctx, version)}
+            self._send(200, obj_list_to_json(page))
             return
 
         elif parsed_url.path == "/favourites":
@@ -56,8 +228,32 @@ class RecommendationHandler(BaseHTTPRequestHandler):
             movie_data = self.movie_repository.get_by_ids(favs)
 
             recommendations_json = obj_list_to_json(movie_data)
-            self._send_headers(200)
-            self.wfile.write(recommendations_json)
+            self._send(200, recommendations_json)
+            return
+
+        elif parsed_url.path == "/titles":
+            # all titles, for the app's title suggestions
+            titles_json = json.dumps(self.movie_repository.get_titles())
+            etag = '"{0}"'.format(hashlib.sha1(titles_json.encode('utf-8')).hexdigest())
+            if self.headers.get('If-None-Match') == etag:
+                self._send_headers(304, etag)
+                return
+            self._send(200, titles_json, etag)
+            return
+
+        elif parsed_url.path.startswith("/posters/"):
+            # posters of the movies the app has none bundled for, e.g. /posters/tt0133093.jpg
+            file_name = parsed_url.path[len("/posters/"):]
+            poster = os.path.join(posters_dir, file_name)
+            if not re.match(r"^tt\d+\.jpg$", file_name) or not os.path.isfile(poster):
+                self._send(404, json.dumps({"error": "No poster: {0}.".format(file_name)}))
+                return
+            self.send_response(200)
+            self.send_header('Content-type', 'image/jpeg')
+            self.send_header('Cache-Control', 'public, max-age=86400')
+            self.end_headers()
+            with open(poster, 'rb') as f:
+                self.wfile.write(f.read())
             return
 
     def do_POST(self):
@@ -83,12 +279,10 @@ class RecommendationHandler(BaseHTTPRequestHandler):
 
             if len(found_data) > 0:
                 favs_json = obj_list_to_json(found_data)
-                self._send_headers(200)
-                self.wfile.write(favs_json)
+                self._send(200, favs_json)
             else:
-                self._send_headers(400)
                 error_msg = {"error": "Movies not found: {0}.".format(", ".join(failed))}
-                self.wfile.write(json.dumps(error_msg))
+                self._send(400, json.dumps(error_msg))
 
 
 if __name__ == '__main__':
@@ -105,6 +299,8 @@ if __name__ == '__main__':
     }
     RecommendationHandler.user_repository = user_db
     RecommendationHandler.movie_repository = movie_db
+    # changes on every restart, when the rating data may have been reloaded
+    RecommendationHandler.model_version = str(time.time())
 
     recServer = HTTPServer((hostName, hostPort), RecommendationHandler)
     print(time.asctime(), "Server starts on: %s:%s" % (hostName, hostPort))